@@ -0,0 +1,36 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 活动定时任务分片配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.activity-shard")
+public class ActivityShardConfig {
+
+    /**
+     * 分片数，应明显大于节点数，使分片能在节点间均匀分配
+     */
+    private int count = 16;
+
+    /**
+     * 分片租约时长，持有者宕机后最多经过该时长由其他节点接管
+     */
+    private Duration leaseTtl = Duration.ofSeconds(15);
+
+    /**
+     * 心跳与续租间隔，应小于租约时长的一半
+     */
+    private Duration renewInterval = Duration.ofSeconds(5);
+
+    /**
+     * 超过该时长没有心跳的节点视为下线
+     */
+    private Duration nodeTtl = Duration.ofSeconds(15);
+}
@@ -0,0 +1,68 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 签到配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.checkin")
+public class CheckinConfig {
+
+    /**
+     * 活动未设置签到半径时使用的默认半径（米）
+     */
+    private int defaultRadius = 100;
+
+    /**
+     * 是否使用动态签到码：签到二维码中带有按时间轮换的签名，签到时在本地校验，
+     * Redis 只用于记录“已签到”标记
+     */
+    private boolean tokenMode = false;
+
+    /**
+     * 签到码签名主密钥，各活动的密钥由它派生，集群内所有实例必须一致
+     */
+    private String tokenSecret;
+
+    /**
+     * 签到码轮换周期
+     */
+    private Duration tokenPeriod = Duration.ofSeconds(30);
+
+    /**
+     * 校验时额外接受的前后周期数，容忍扫码到提交之间的延迟和时钟偏差
+     */
+    private int tokenSkew = 1;
+
+    /**
+     * 动态签到码模式下“已签到”标记的保留时间
+     */
+    private Duration markerTtl = Duration.ofDays(1);
+
+    /**
+     * 签到开放时每批写入 Redis 的待签到手机号数
+     */
+    private int rosterChunkSize = 1000;
+
+    /**
+     * 名单加载进度的保留时间，加载中断后在此期间内可从断点继续
+     */
+    private Duration rosterProgressTtl = Duration.ofHours(1);
+
+    /**
+     * 名单加载锁的时长，须长于加载一个活动名单所需的时间；持有者宕机时锁到期后由其他节点从进度处继续
+     */
+    private Duration rosterLockTtl = Duration.ofMinutes(10);
+
+    /**
+     * 签到数据在活动结束后的保留时间，活动结束时的结算须在此期间内完成。
+     * 签到在活动结束时即关闭，保留期内不再接受签到
+     */
+    private Duration settleGrace = Duration.ofHours(1);
+}
@@ -0,0 +1,37 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 签到看板配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.dashboard")
+public class DashboardConfig {
+
+    /**
+     * 推送间隔，间隔内的多次签到合并为一帧
+     */
+    private Duration frameInterval = Duration.ofMillis(250);
+
+    /**
+     * 展示的最近签到条数
+     */
+    private int recentSize = 20;
+
+    /**
+     * 单帧发送的最长耗时，超过后断开该连接
+     */
+    private Duration sendTimeLimit = Duration.ofSeconds(5);
+
+    /**
+     * 单个连接待发送数据的缓冲上限，超过后断开该连接
+     */
+    private DataSize bufferLimit = DataSize.ofKilobytes(256);
+}
@@ -0,0 +1,38 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 报名名额库存配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.inventory")
+public class InventoryConfig {
+
+    /**
+     * 每个活动的名额分片数，为 1 时不分片，沿用单个计数键与单个报名者集合
+     * 活动开放报名时记录当时的分片数，修改该值只对之后开放报名的活动生效
+     */
+    private int shards = 1;
+
+    /**
+     * 本地“已满”标记的有效期，过期后重新走一次 Redis 校验，
+     * 防止因丢失释放名额的广播而一直拒绝报名
+     */
+    private Duration soldOutTtl = Duration.ofSeconds(5);
+
+    /**
+     * 分片间名额转移的记录超过该时长仍未完成时，由对账任务补做转入
+     */
+    private Duration transferTimeout = Duration.ofSeconds(10);
+
+    /**
+     * 名额转移对账的间隔
+     */
+    private Duration transferCheckInterval = Duration.ofSeconds(5);
+}
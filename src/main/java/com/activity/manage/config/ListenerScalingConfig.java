@@ -0,0 +1,66 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 监听器消费者数与预取数自适应调整配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.listener-scaling")
+public class ListenerScalingConfig {
+
+    /**
+     * 是否按队列积压、消费耗时和数据库连接等待自动调整
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个监听器的最少消费者数，也是启动时的消费者数
+     */
+    private int minConcurrency = 1;
+
+    /**
+     * 每个监听器的最多消费者数
+     */
+    private int maxConcurrency = 10;
+
+    /**
+     * 预取数下限，批量消费的监听器不会低于批大小
+     */
+    private int minPrefetch = 1;
+
+    /**
+     * 预取数上限
+     */
+    private int maxPrefetch = 250;
+
+    /**
+     * 启动时的预取数
+     */
+    private int initialPrefetch = 10;
+
+    /**
+     * 每个消费者可承担的积压消息数，积压超过 消费者数 * 该值 时扩容
+     */
+    private int backlogPerConsumer = 100;
+
+    /**
+     * 单次监听方法调用的平均耗时超过该值时视为下游过载
+     */
+    private Duration maxProcessingTime = Duration.ofMillis(500);
+
+    /**
+     * 获取数据库连接的平均等待时间超过该值时视为数据库过载
+     */
+    private Duration maxDbWait = Duration.ofMillis(50);
+
+    /**
+     * 调整间隔
+     */
+    private Duration interval = Duration.ofSeconds(5);
+}
@@ -0,0 +1,57 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 本地发件箱配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.outbox")
+public class OutboxConfig {
+
+    /**
+     * 是否启用发件箱，关闭时报名消息直接发送到RabbitMQ
+     */
+    private boolean enabled = true;
+
+    /**
+     * 段文件存放目录
+     */
+    private String dir = "outbox";
+
+    /**
+     * 单个段文件大小
+     */
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    /**
+     * 每次追加后是否强制刷盘
+     */
+    private boolean force = false;
+
+    /**
+     * 每批投递的最大消息数
+     */
+    private int relayBatchSize = 500;
+
+    /**
+     * 等待RabbitMQ确认的超时时间
+     */
+    private Duration confirmTimeout = Duration.ofSeconds(5);
+
+    /**
+     * 发件箱为空时的轮询间隔
+     */
+    private Duration pollInterval = Duration.ofMillis(20);
+
+    /**
+     * 投递失败后的重试间隔
+     */
+    private Duration retryInterval = Duration.ofSeconds(1);
+}
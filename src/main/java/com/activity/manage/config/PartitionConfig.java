@@ -0,0 +1,36 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 报名队列分区配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.partition")
+public class PartitionConfig {
+
+    /**
+     * 报名队列的分区数，为 1 时沿用单一报名队列
+     */
+    private int count = 8;
+
+    /**
+     * 一致性哈希环上每个分区的虚拟节点数
+     */
+    private int virtualNodes = 160;
+
+    /**
+     * 节点心跳及重新分配分区的间隔
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(5);
+
+    /**
+     * 超过该时长没有心跳的节点视为下线，其分区由其余节点接管
+     */
+    private Duration nodeTtl = Duration.ofSeconds(15);
+}
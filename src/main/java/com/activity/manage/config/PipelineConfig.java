@@ -0,0 +1,62 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 报名/签到数据从Redis写入数据库的流水线配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.pipeline")
+public class PipelineConfig {
+
+    public enum Engine {
+        /**
+         * 经RabbitMQ队列异步写库
+         */
+        RABBITMQ,
+        /**
+         * 不依赖消息队列，Lua脚本写入Redis Stream，由消费组批量写库（适合单节点部署）
+         */
+        REDIS_STREAM
+    }
+
+    private Engine engine = Engine.RABBITMQ;
+
+    /**
+     * 每次从Stream读取的最大条数
+     */
+    private int streamBatchSize = 200;
+
+    /**
+     * Stream为空时阻塞等待的时长
+     */
+    private Duration streamBlock = Duration.ofSeconds(1);
+
+    /**
+     * 已投递但超过该时长仍未确认的消息会被重新认领（消费者宕机的情况）
+     */
+    private Duration streamClaimIdle = Duration.ofSeconds(30);
+
+    /**
+     * 写库失败后的重试间隔
+     */
+    private Duration streamRetryInterval = Duration.ofSeconds(1);
+
+    /**
+     * 单条事件最多投递的次数，逐条重试仍然写库失败且达到该次数后移入死信Stream
+     */
+    private int streamMaxDeliveries = 5;
+
+    public boolean isRabbitmq() {
+        return engine == Engine.RABBITMQ;
+    }
+
+    public boolean isRedisStream() {
+        return engine == Engine.REDIS_STREAM;
+    }
+}
@@ -0,0 +1,47 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 消息发送配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.publisher")
+public class PublisherConfig {
+
+    /**
+     * 是否合批发送报名和签到消息
+     */
+    private boolean batching = false;
+
+    /**
+     * 每批最多合并的消息条数
+     */
+    private int batchSize = 100;
+
+    /**
+     * 每批消息体的最大字节数
+     */
+    private DataSize bufferLimit = DataSize.ofKilobytes(64);
+
+    /**
+     * 未凑满一批时最多等待的时间
+     */
+    private Duration linger = Duration.ofMillis(10);
+
+    /**
+     * 合批发送失败后重发的间隔
+     */
+    private Duration retryInterval = Duration.ofSeconds(1);
+
+    /**
+     * 等待重发的消息条数上限，达到后拒绝新消息
+     */
+    private int retryLimit = 10000;
+}
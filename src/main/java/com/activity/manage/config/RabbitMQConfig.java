@@ -1,7 +1,12 @@
 package com.activity.manage.config;
 
+import com.activity.manage.service.RegistrationPartitionService;
+import com.activity.manage.utils.AsyncBatchingRabbitTemplate;
+import com.activity.manage.utils.TieredRetryRecoverer;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
@@ -9,11 +14,16 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
-import static com.activity.manage.utils.constant.RabbitMQConstant.CHECKIN_QUEUE;
-import static com.activity.manage.utils.constant.RabbitMQConstant.REGISTRATION_QUEUE;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.activity.manage.utils.constant.RabbitMQConstant.*;
 
 @Slf4j
 @Configuration
@@ -21,6 +31,18 @@ public class RabbitMQConfig {
 
     @Autowired
     private ConnectionFactory connectionFactory;
+    @Autowired
+    private RegistrationBatchConfig registrationBatchConfig;
+    @Autowired
+    private CheckinBatchConfig checkinBatchConfig;
+    @Autowired
+    private PublisherConfig publisherConfig;
+    @Autowired
+    private RetryConfig retryConfig;
+    @Autowired
+    private PartitionConfig partitionConfig;
+    @Autowired
+    private ListenerScalingConfig listenerScalingConfig;
 
     @Bean
     public RabbitAdmin rabbitAdmin() {
@@ -37,6 +59,62 @@ public class RabbitMQConfig {
         return new Queue(CHECKIN_QUEUE, true);
     }
 
+    /**
+     * 声明报名分区队列，分区数为 1 时不声明
+     * 分区队列开启 single-active-consumer，节点交接分区的间隙里即使新旧节点同时订阅，也只有一个消费者收到消息
+     *
+     * @return 报名分区队列
+     */
+    @Bean
+    public Declarables registrationPartitionQueues() {
+        List<Declarable> declarables = new ArrayList<>();
+        if (partitionConfig.getCount() > 1) {
+            for (int i = 0; i < partitionConfig.getCount(); i++) {
+                declarables.add(QueueBuilder.durable(RegistrationPartitionService.queueName(i))
+                        .singleActiveConsumer()
+                        .build());
+            }
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * 声明分级重试拓扑
+     * 每一级是一个 fanout 交换机和一个固定 TTL 的延迟队列，延迟队列只设死信交换机为默认交换机、不设死信路由键，
+     * 消息到期后按发送时的路由键（即原队列名）回到原队列；同一级队列中的消息 TTL 相同，按先进先出依次到期。
+     * 所有业务队列共用这几级延迟队列和一个停车场队列
+     *
+     * @return 重试交换机、延迟队列、绑定关系和停车场队列
+     */
+    @Bean
+    public Declarables retryDeclarables() {
+        List<Declarable> declarables = new ArrayList<>();
+        List<Duration> delays = retryConfig.getDelays();
+        for (int i = 1; i <= delays.size(); i++) {
+            FanoutExchange exchange = new FanoutExchange(RETRY_EXCHANGE_PREFIX + i, true, false);
+            Queue queue = QueueBuilder.durable(RETRY_QUEUE_PREFIX + i)
+                    .ttl((int) delays.get(i - 1).toMillis())
+                    .deadLetterExchange("")
+                    .build();
+            declarables.add(exchange);
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange));
+        }
+        declarables.add(new Queue(PARKING_QUEUE, true));
+        return new Declarables(declarables);
+    }
+
+    /**
+     * 配置消费失败后的恢复器，把失败消息送往下一级重试队列或停车场队列
+     *
+     * @return 分级重试恢复器
+     */
+    @Bean
+    public TieredRetryRecoverer tieredRetryRecoverer() {
+        return new TieredRetryRecoverer(rabbitTemplate(connectionFactory), retryConfig.getDelays().size(),
+                retryConfig.getConfirmTimeout());
+    }
+
     /**
      * 配置JSON消息转换器
      * 将RabbitMQ的消息体在Java对象和JSON格式之间进行转换
@@ -62,16 +140,43 @@ public class RabbitMQConfig {
      * @return 配置了JSON转换器的RabbitTemplate实例
      */
     @Bean
+    @Primary
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
         rabbitTemplate.setMessageConverter(jsonMessageConverter());
         return rabbitTemplate;
     }
 
+    /**
+     * 配置合批发送的RabbitTemplate，仅在 manage.publisher.batching 为 true 时启用
+     * 报名和签到消息在发送线程中按队列合并，达到条数/字节上限或超过等待时间后一次发出，
+     * 请求线程不再承担与RabbitMQ之间的网络开销；发送失败的批由发送线程按顺序重发
+     *
+     * @param connectionFactory RabbitMQ连接工厂，由Spring Boot自动配置
+     * @param meterRegistry 指标注册表，用于记录批大小、发送耗时和待重发条数
+     * @return 合批发送的RabbitTemplate实例
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "manage.publisher", name = "batching", havingValue = "true")
+    public AsyncBatchingRabbitTemplate batchingRabbitTemplate(ConnectionFactory connectionFactory,
+                                                              MeterRegistry meterRegistry) {
+        AsyncBatchingRabbitTemplate rabbitTemplate = new AsyncBatchingRabbitTemplate(
+                connectionFactory,
+                publisherConfig.getBatchSize(),
+                (int) publisherConfig.getBufferLimit().toBytes(),
+                publisherConfig.getLinger().toMillis(),
+                publisherConfig.getRetryInterval(),
+                publisherConfig.getRetryLimit(),
+                meterRegistry);
+        rabbitTemplate.setMessageConverter(jsonMessageConverter());
+        return rabbitTemplate;
+    }
+
     /**
      * 配置RabbitMQ监听器容器工厂
      * 用于创建消息监听容器，处理到达队列的消息
      * 设置使用JSON消息转换器，确保能正确反序列化JSON格式的消息
+     * 监听方法抛出异常时由分级重试恢复器转发消息，不再原地重新入队
      *
      * @param connectionFactory RabbitMQ连接工厂，由Spring Boot自动配置
      * @return 配置了JSON转换器的监听器容器工厂
@@ -82,6 +187,75 @@ public class RabbitMQConfig {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
         factory.setMessageConverter(jsonMessageConverter());
+        applyScaling(factory);
+        factory.setPrefetchCount(listenerScalingConfig.getInitialPrefetch());
+        // 只执行一次，失败立即交给恢复器转发，消费线程不做任何等待
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(1)
+                .recoverer(tieredRetryRecoverer())
+                .build());
+        return factory;
+    }
+
+    /**
+     * 配置批量消费的监听器容器工厂
+     * 一次拉取至多 batchSize 条消息，或等待 flushInterval 毫秒后提交已拉取的部分，
+     * 监听方法以 List 形式接收整批消息，方法正常返回后整批确认，抛出异常时整批转入下一级重试队列
+     *
+     * @param connectionFactory RabbitMQ连接工厂，由Spring Boot自动配置
+     * @return 批量模式的监听器容器工厂
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            ConnectionFactory connectionFactory) {
+        return batchFactory(connectionFactory,
+                registrationBatchConfig.getBatchSize(), registrationBatchConfig.getFlushInterval());
+    }
+
+    /**
+     * 配置签到队列批量消费的监听器容器工厂
+     * 一次拉取至多 batchSize 条签到消息，或等待 flushInterval 毫秒后提交已拉取的部分
+     *
+     * @param connectionFactory RabbitMQ连接工厂，由Spring Boot自动配置
+     * @return 批量模式的监听器容器工厂
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory checkinBatchRabbitListenerContainerFactory(
+            ConnectionFactory connectionFactory) {
+        return batchFactory(connectionFactory,
+                checkinBatchConfig.getBatchSize(), checkinBatchConfig.getFlushInterval());
+    }
+
+    private SimpleRabbitListenerContainerFactory batchFactory(ConnectionFactory connectionFactory,
+                                                              int batchSize, long flushInterval) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(jsonMessageConverter());
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setBatchReceiveTimeout(flushInterval);
+        // 预取数不能小于批大小，否则一批永远凑不满
+        factory.setPrefetchCount(batchSize);
+        applyScaling(factory);
+        // 只执行一次，失败立即交给恢复器转发，消费线程不做任何等待
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(1)
+                .recoverer(tieredRetryRecoverer())
+                .build());
         return factory;
     }
-}
\ No newline at end of file
+
+    /**
+     * 按下限启动消费者；启用自适应调整时上限也从下限开始，由 ListenerScalingService 按负载放开，
+     * 否则交给容器自身在上下限之间伸缩
+     *
+     * @param factory 监听器容器工厂
+     */
+    private void applyScaling(SimpleRabbitListenerContainerFactory factory) {
+        factory.setConcurrentConsumers(listenerScalingConfig.getMinConcurrency());
+        factory.setMaxConcurrentConsumers(listenerScalingConfig.isEnabled()
+                ? listenerScalingConfig.getMinConcurrency()
+                : listenerScalingConfig.getMaxConcurrency());
+    }
+}
@@ -0,0 +1,24 @@
+package com.activity.manage.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+public class RedisConfig {
+
+    /**
+     * 配置Redis发布/订阅的监听容器
+     * 各组件在初始化时向容器注册自己关心的频道，用于在多个实例之间广播本地缓存的变化
+     *
+     * @param redisConnectionFactory Redis连接工厂，由Spring Boot自动配置
+     * @return 监听容器
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+}
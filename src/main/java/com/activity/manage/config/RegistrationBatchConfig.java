@@ -0,0 +1,29 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 报名队列批量消费配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.registration-batch")
+public class RegistrationBatchConfig {
+
+    /**
+     * 是否启用批量消费模式，关闭时逐条消费
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每批最多拉取的消息数
+     */
+    private int batchSize = 100;
+
+    /**
+     * 凑批的最长等待时间（毫秒），超时后即使未满也提交当前批次
+     */
+    private long flushInterval = 200;
+}
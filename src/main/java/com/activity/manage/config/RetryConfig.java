@@ -0,0 +1,32 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 消费失败重试配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.retry")
+public class RetryConfig {
+
+    /**
+     * 各级重试队列的延迟，依次递增；全部用完后消息进入停车场队列
+     */
+    private List<Duration> delays = List.of(Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofSeconds(60));
+
+    /**
+     * 单次回放停车场消息的默认条数上限
+     */
+    private int replayLimit = 1000;
+
+    /**
+     * 失败消息转发到重试队列或停车场时等待发布确认的超时时间，超时后原消息重新入队
+     */
+    private Duration confirmTimeout = Duration.ofSeconds(5);
+}
@@ -0,0 +1,36 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 活动事件调度配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.scheduler")
+public class SchedulerConfig {
+
+    /**
+     * 拉取到期事件的间隔，即事件触发的最大延迟
+     */
+    private Duration pollInterval = Duration.ofMillis(200);
+
+    /**
+     * 每次最多领取的到期事件数
+     */
+    private int batchSize = 100;
+
+    /**
+     * 事件处理失败后重新触发的延迟
+     */
+    private Duration retryDelay = Duration.ofSeconds(5);
+
+    /**
+     * 兜底扫描的 cron 表达式，处理调度丢失（如 Redis 数据丢失、领取后宕机）的活动
+     */
+    private String reconcileCron = "30 */5 * * * ?";
+}
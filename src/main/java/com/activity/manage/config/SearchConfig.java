@@ -0,0 +1,25 @@
+package com.activity.manage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 活动搜索配置
+ */
+@Configuration
+@Data
+@ConfigurationProperties(prefix = "manage.search")
+public class SearchConfig {
+
+    /**
+     * 是否使用内存中的倒排索引搜索活动名称与位置，关闭时回退为数据库 like 匹配
+     */
+    private boolean enabled = true;
+
+    /**
+     * 同时带状态、名额条件时，每次作为候选id交给数据库过滤的活动数，候选更多时分多次过滤，
+     * 关键字匹配始终以索引为准，不会因候选过多而改变匹配语义
+     */
+    private int maxCandidates = 1000;
+}
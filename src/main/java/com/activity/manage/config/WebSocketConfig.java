@@ -0,0 +1,26 @@
+package com.activity.manage.config;
+
+import com.activity.manage.controller.CheckinDashboardHandler;
+import com.activity.manage.utils.interceptor.DashboardHandshakeInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+    @Autowired
+    private CheckinDashboardHandler checkinDashboardHandler;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(checkinDashboardHandler, "/ws/checkin")
+                .addInterceptors(new DashboardHandshakeInterceptor(stringRedisTemplate))
+                .setAllowedOriginPatterns("*");
+    }
+}
@@ -5,17 +5,22 @@ import com.activity.manage.mapper.ActivityMapper;
 import com.activity.manage.pojo.dto.ActivityDTO;
 import com.activity.manage.pojo.entity.Activity;
 import com.activity.manage.service.ActivityService;
+import com.activity.manage.service.CheckinRosterService;
+import com.activity.manage.service.CheckinTokenService;
 import com.activity.manage.service.QRCodeService;
+import com.activity.manage.utils.exception.BaseException;
 import com.activity.manage.utils.result.Result;
 import com.github.pagehelper.PageInfo;
 import com.google.zxing.WriterException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import java.io.IOException;
+import java.util.List;
 
 import static com.activity.manage.utils.constant.QRCodeConstant.*;
 
@@ -32,6 +37,10 @@ public class ActivityController {
     private ActivityMapper activityMapper;
     @Autowired
     private UrlConfig urlConfig;
+    @Autowired
+    private CheckinTokenService checkinTokenService;
+    @Autowired
+    private CheckinRosterService checkinRosterService;
 
     /**
      * 1. 创建活动
@@ -51,12 +60,13 @@ public class ActivityController {
             @RequestParam(required = false) String activityName,
             @RequestParam(required = false) Integer status,
             @RequestParam(required = false) Boolean isFull,
+            @RequestParam(required = false) Integer minRemaining,
             @RequestParam(required = false) String location,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize
     ) {
         // 接口文档 要求 data 即为分页对象
-        return activityService.searchActivities(activityName, status, isFull, location, pageNum, pageSize);
+        return activityService.searchActivities(activityName, status, isFull, minRemaining, location, pageNum, pageSize);
     }
 
     /**
@@ -110,4 +120,29 @@ public class ActivityController {
         
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * 7. 生成动态签到二维码，供现场大屏轮换展示
+     * 接口文档: GET /activity/{id}/checkin/qrcode
+     */
+    @GetMapping(value = "/{id}/checkin/qrcode")
+    public ResponseEntity<byte[]> getRotatingCheckinQRCode(@PathVariable("id") Long id,
+                                                           @RequestParam(defaultValue = DEFAULT_SIZE) @Min(100) @Max(1000) int width,
+                                                           @RequestParam(defaultValue = DEFAULT_SIZE) @Min(100) @Max(1000) int height) throws WriterException, IOException {
+        if (!checkinTokenService.isEnabled()) {
+            throw new BaseException("未启用动态签到码");
+        }
+        CheckinTokenService.Token token = checkinTokenService.current(id);
+        String content = urlConfig.getCheckinPage() + "/checkin/" + id + "?token=" + token.token();
+        return qrCodeService.generateRotatingQRCode(content, width, height, token.expiresIn());
+    }
+
+    /**
+     * 8. 查询未到场的报名者
+     * 接口文档: GET /activity/{id}/checkin/absent
+     */
+    @GetMapping("/{id}/checkin/absent")
+    public Result<List<String>> getAbsent(@PathVariable("id") Long id) {
+        return Result.success(checkinRosterService.absent(id));
+    }
+}
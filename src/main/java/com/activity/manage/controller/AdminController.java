@@ -3,7 +3,9 @@ package com.activity.manage.controller;
 import com.activity.manage.pojo.dto.AdministratorPasswordDTO;
 import com.activity.manage.pojo.dto.AdministratorUsernameDTO;
 import com.activity.manage.pojo.entity.Administrator;
+import com.activity.manage.config.RetryConfig;
 import com.activity.manage.service.AdminService;
+import com.activity.manage.service.ParkingLotService;
 import com.activity.manage.utils.exception.RedisException;
 import com.activity.manage.utils.result.Result;
 import lombok.extern.slf4j.Slf4j;
@@ -16,6 +18,10 @@ import org.springframework.web.bind.annotation.*;
 public class AdminController {
     @Autowired
     private AdminService adminService;
+    @Autowired
+    private ParkingLotService parkingLotService;
+    @Autowired
+    private RetryConfig retryConfig;
 
     /**
      * 登录功能
@@ -74,4 +80,24 @@ public class AdminController {
         adminService.updateName(administratorUsernameDTO);
         return Result.success();
     }
+
+    /**
+     * 查询停车场消息条数
+     * @return
+     */
+    @GetMapping("/parking-lot")
+    public Result<Long> parkingLotSize() {
+        return Result.success(parkingLotService.size());
+    }
+
+    /**
+     * 批量回放停车场消息到原队列
+     * @param limit 本次最多回放的条数
+     * @return 实际回放的条数
+     */
+    @PostMapping("/parking-lot/replay")
+    public Result<Integer> replayParkingLot(@RequestParam(required = false) Integer limit) {
+        int max = limit == null || limit <= 0 ? retryConfig.getReplayLimit() : limit;
+        return Result.success(parkingLotService.replay(max));
+    }
 }
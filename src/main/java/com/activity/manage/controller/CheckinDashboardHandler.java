@@ -0,0 +1,38 @@
+package com.activity.manage.controller;
+
+import com.activity.manage.service.CheckinDashboardService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import static com.activity.manage.utils.interceptor.DashboardHandshakeInterceptor.ACTIVITY_ID;
+
+/**
+ * 签到看板 WebSocket 端点，只向客户端推送，不处理客户端消息
+ */
+@Component
+@Slf4j
+public class CheckinDashboardHandler extends TextWebSocketHandler {
+    @Autowired
+    private CheckinDashboardService checkinDashboardService;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        Long activityId = (Long) session.getAttributes().get(ACTIVITY_ID);
+        log.info("签到看板连接：活动 {}，会话 {}", activityId, session.getId());
+        checkinDashboardService.join(session, activityId);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        checkinDashboardService.leave(session, (Long) session.getAttributes().get(ACTIVITY_ID));
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.debug("签到看板连接异常：{}", exception.getMessage());
+    }
+}
@@ -82,6 +82,16 @@ public class RegistrationController {
         return registrationService.registration(registrationDTO);
     }
 
+    /**
+     * 查询活动剩余名额
+     * @param id
+     * @return
+     */
+    @GetMapping("/{id}/remaining")
+    public Result<Long> remainingSeats(@PathVariable("id") Long id) {
+        return registrationService.remainingSeats(id);
+    }
+
     @DeleteMapping
     public Result registrationDelete(@RequestBody RegistrationDeleteDTO registrationDeleteDTO) {
         return registrationService.registrationDelete(registrationDeleteDTO);
@@ -1,10 +1,14 @@
 package com.activity.manage.mapper;
 
+import com.activity.manage.pojo.dto.ActivityQueryDTO;
 import com.activity.manage.pojo.entity.Activity;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface ActivityMapper {
@@ -25,10 +29,17 @@ public interface ActivityMapper {
 
     /**
      * 动态条件查询
-     * @param activity
+     * @param query
+     * @return
+     */
+    List<Activity> select(ActivityQueryDTO query);
+
+    /**
+     * 动态条件查询，只返回活动id
+     * @param query
      * @return
      */
-    List<Activity> select(Activity activity);
+    List<Long> selectIds(ActivityQueryDTO query);
 
     /**
      * 动态更新
@@ -48,5 +59,40 @@ public interface ActivityMapper {
 
     List<Activity> selectByActivityStart(LocalDateTime time);
 
+    /**
+     * 逐行读取全部活动的id、名称、简介与位置，用于建立搜索索引
+     * @param handler 逐行处理结果，不在内存中保留整个结果集
+     */
+    void loadSearchText(ResultHandler<Activity> handler);
+
+    /**
+     * 查询已结束但尚未结算的活动
+     * @param time
+     * @return
+     */
+    List<Activity> selectUnsettled(LocalDateTime time);
+
+    /**
+     * 按数据库中的报名记录重新统计报名人数与签到人数，并标记为已结算
+     * @param ids
+     * @param time 结算时间
+     * @return 更新的行数
+     */
+    int settleBatch(@Param("ids") List<Long> ids, @Param("time") LocalDateTime time);
+
+    /**
+     * 查询报名、活动尚未开始或尚未结束的活动，用于重新写入调度事件
+     * @param time
+     * @return
+     */
+    List<Activity> selectUpcoming(LocalDateTime time);
+
     List<Activity> selectByIdBatch(List<Long> ids);
+
+    /**
+     * 批量累加多个活动的目前报名人数
+     * @param deltas 活动id -> 人数变化量
+     * @return
+     */
+    int updateParticipantsBatch(@Param("deltas") Map<Long, Long> deltas);
 }
\ No newline at end of file
@@ -3,22 +3,76 @@ package com.activity.manage.mapper;
 import com.activity.manage.pojo.entity.Registration;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
 public interface RegistrationMapper {
-    void insert(Registration registration);
+    /**
+     * 插入报名记录，已存在时不做修改；数据不合法时抛出异常
+     * @param registration
+     * @return 插入的行数
+     */
+    int insert(Registration registration);
 
-    void checkin(Registration registration);
+    /**
+     * 多行插入报名记录，已存在的记录不做修改；任意一条数据不合法时整条语句失败
+     * @param registrations
+     * @return 插入的行数
+     */
+    int insertBatch(List<Registration> registrations);
+
+    /**
+     * 将未签到的报名记录置为已签到
+     * @param registration
+     * @return 状态发生变化的行数
+     */
+    int checkin(Registration registration);
+
+    /**
+     * 将同一活动下一批手机号对应的未签到记录置为已签到
+     * @param activityId
+     * @param phones
+     * @return 状态发生变化的行数
+     */
+    int checkinBatch(@Param("activityId") Long activityId, @Param("phones") Collection<String> phones);
+
+    /**
+     * 将同一活动下一批序号对应的未签到记录置为已签到
+     * @param activityId
+     * @param seqs
+     * @return 状态发生变化的行数
+     */
+    int checkinBySeq(@Param("activityId") Long activityId, @Param("seqs") Collection<Integer> seqs);
 
     List<String> selectPhoneByActivity(Long id);
 
     List<Long> selectActivityIdByPhone(String phone);
 
-    void delete(@Param("activityId") Long activityId, @Param("phone") String phone);
+    int delete(@Param("activityId") Long activityId, @Param("phone") String phone);
+
+    /**
+     * 按主键顺序为活动的全部报名记录分配从 0 开始的连续序号
+     * @param activityId
+     * @return 报名记录数
+     */
+    int assignSeq(Long activityId);
 
-    List<String> selectUncheck(Long activityId);
+    /**
+     * 按序号顺序流式读取活动的报名记录，只包含 id、phone、seq 与 checkin
+     * @param activityId
+     * @param afterSeq 从该序号之后开始读取，用于断点续传
+     * @return 游标，需在同一个 SqlSession 内遍历并关闭
+     */
+    Cursor<Registration> scanRoster(@Param("activityId") Long activityId, @Param("afterSeq") Integer afterSeq);
 
-    Integer isCheckin(@Param("activityId") Long activityId,@Param("phone") String phone);
+    /**
+     * 逐行读取活动中已分配序号的报名记录，只包含 phone 与 seq
+     * @param activityId
+     * @param handler 逐行处理结果，不在内存中保留整个结果集
+     */
+    void loadRoster(@Param("activityId") Long activityId, ResultHandler<Registration> handler);
 }
@@ -0,0 +1,57 @@
+package com.activity.manage.mapper.handler;
+
+import com.activity.manage.pojo.entity.Geofence;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedTypes;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 签到范围与数据库 JSON 文本之间的转换
+ */
+@MappedTypes(Geofence.class)
+public class GeofenceTypeHandler extends BaseTypeHandler<Geofence> {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, Geofence parameter, JdbcType jdbcType) throws SQLException {
+        try {
+            ps.setString(i, OBJECT_MAPPER.writeValueAsString(parameter));
+        } catch (JsonProcessingException e) {
+            throw new SQLException("签到范围无法序列化", e);
+        }
+    }
+
+    @Override
+    public Geofence getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return parse(rs.getString(columnName));
+    }
+
+    @Override
+    public Geofence getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return parse(rs.getString(columnIndex));
+    }
+
+    @Override
+    public Geofence getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return parse(cs.getString(columnIndex));
+    }
+
+    private static Geofence parse(String json) throws SQLException {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readValue(json, Geofence.class);
+        } catch (JsonProcessingException e) {
+            throw new SQLException("签到范围格式错误", e);
+        }
+    }
+}
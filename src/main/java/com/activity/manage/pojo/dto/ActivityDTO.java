@@ -1,5 +1,6 @@
 package com.activity.manage.pojo.dto;
 
+import com.activity.manage.pojo.entity.Geofence;
 import lombok.Data;
 
 import java.io.Serializable;
@@ -37,6 +38,16 @@ public class ActivityDTO implements Serializable {
      */
     private String location;
 
+    /**
+     * 签到半径（米），为空时使用默认半径
+     */
+    private Integer checkinRadius;
+
+    /**
+     * 签到范围（多个签到点或多边形），为空时以活动坐标和签到半径为签到范围
+     */
+    private Geofence geofence;
+
     /**
      * 相关链接
      */
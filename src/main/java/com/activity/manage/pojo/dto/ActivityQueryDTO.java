@@ -0,0 +1,45 @@
+package com.activity.manage.pojo.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 活动的查询条件，全部条件在 SQL 中过滤，分页计数与结果一致
+ */
+@Data
+@Builder
+public class ActivityQueryDTO implements Serializable {
+
+    /**
+     * 活动名称，模糊匹配
+     */
+    private String activityName;
+
+    /**
+     * 活动状态，按时间推导，为ActivityConstant中的数据
+     */
+    private Integer status;
+
+    /**
+     * 位置描述，模糊匹配
+     */
+    private String location;
+
+    /**
+     * 是否已报满
+     */
+    private Boolean isFull;
+
+    /**
+     * 剩余名额不少于该值
+     */
+    private Integer minRemaining;
+
+    /**
+     * 限定在这些活动中查询，并按此顺序排列；由搜索索引给出时名称与位置不再用 like 匹配
+     */
+    private List<Long> ids;
+}
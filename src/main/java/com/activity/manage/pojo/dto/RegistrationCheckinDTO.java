@@ -28,4 +28,8 @@ public class RegistrationCheckinDTO {
      * 经度
      */
     private BigDecimal longitude;
+    /**
+     * 动态签到码，取自签到二维码
+     */
+    private String token;
 }
@@ -51,6 +51,16 @@ public class Activity implements Serializable {
      */
     private String location;
 
+    /**
+     * 签到半径（米），为空时使用默认半径
+     */
+    private Integer checkinRadius;
+
+    /**
+     * 签到范围（多个签到点或多边形），为空时以活动坐标和签到半径为签到范围
+     */
+    private Geofence geofence;
+
     /**
      * 二维码存储OSS
      */
@@ -110,4 +120,19 @@ public class Activity implements Serializable {
      * 目前报名人数
      */
     private Integer currentParticipants;
+
+    /**
+     * 剩余名额，由数据库按最大报名人数与目前报名人数生成
+     */
+    private Integer remaining;
+
+    /**
+     * 签到人数，活动结束结算时写入
+     */
+    private Integer checkinCount;
+
+    /**
+     * 结算时间，为空表示尚未结算
+     */
+    private LocalDateTime settleTime;
 }
@@ -0,0 +1,68 @@
+package com.activity.manage.pojo.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 活动签到范围
+ * 由若干个圆形签到点和（或）一个多边形组成，落在任意一个圆内或多边形内即视为在签到范围内
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Geofence implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 圆形签到点
+     */
+    private List<Anchor> anchors;
+
+    /**
+     * 多边形顶点，按顺序首尾相连，至少三个点
+     */
+    private List<Vertex> polygon;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Anchor implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 纬度
+         */
+        private Double latitude;
+
+        /**
+         * 经度
+         */
+        private Double longitude;
+
+        /**
+         * 半径（米），为空时使用活动的签到半径
+         */
+        private Integer radius;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Vertex implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 纬度
+         */
+        private Double latitude;
+
+        /**
+         * 经度
+         */
+        private Double longitude;
+    }
+}
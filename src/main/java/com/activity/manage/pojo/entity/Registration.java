@@ -42,4 +42,8 @@ public class Registration implements Serializable {
      * 是否已签到。0为未签到，1为已签到
      */
     private Integer checkin;
+    /**
+     * 活动内的签到序号，签到开放时按报名先后从 0 开始连续分配，对应签到位图中的偏移
+     */
+    private Integer seq;
 }
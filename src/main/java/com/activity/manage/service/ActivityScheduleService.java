@@ -0,0 +1,186 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.SchedulerConfig;
+import com.activity.manage.mapper.ActivityMapper;
+import com.activity.manage.pojo.entity.Activity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.activity.manage.utils.constant.RedisConstant.ACTIVITY_SCHEDULE_KEY;
+
+/**
+ * 活动事件调度
+ * 活动创建或修改时把各个时间点（开放报名、开放签到、结算）写入活动所属分片的 Redis 有序集合 activity:schedule:{分片}，
+ * 成员为 活动id|事件，分数为触发时间戳；各实例每 pollInterval 只为自己持有租约的分片用一个Lua脚本领取到期事件，
+ * 领取即移出集合，每个事件只由一个实例处理，触发延迟不超过 pollInterval。
+ * 处理失败的事件延迟 retryDelay 后重新加入；领取后宕机等丢失的事件由定时任务兜底扫描补上
+ */
+@Service
+@Slf4j
+public class ActivityScheduleService {
+
+    /**
+     * 事件：开放报名
+     */
+    public static final String OPEN_REGISTRATION = "registration";
+    /**
+     * 事件：开放签到
+     */
+    public static final String OPEN_CHECKIN = "checkin";
+    /**
+     * 事件：活动结束结算
+     */
+    public static final String SETTLE = "settle";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ActivityMapper activityMapper;
+    @Autowired
+    private ActivityTransitionService activityTransitionService;
+    @Autowired
+    private SchedulerConfig schedulerConfig;
+    @Autowired
+    private ActivityShardService activityShardService;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SCHEDULE_SCRIPT;
+    static {
+        SCHEDULE_SCRIPT = new DefaultRedisScript<>();
+        SCHEDULE_SCRIPT.setLocation(new ClassPathResource("activitySchedule.lua"));
+        SCHEDULE_SCRIPT.setResultType(List.class);
+    }
+
+    /**
+     * 按活动的时间写入事件，已存在的事件更新触发时间；在事务中调用时提交后才写入，避免事件先于数据可见
+     * @param activity
+     */
+    public void schedule(Activity activity) {
+        afterCommit(() -> {
+            String key = key(activity.getId());
+            add(key, activity.getId(), OPEN_REGISTRATION, activity.getRegistrationStart());
+            add(key, activity.getId(), OPEN_CHECKIN, activity.getActivityStart());
+            add(key, activity.getId(), SETTLE, activity.getActivityEnd());
+        });
+    }
+
+    /**
+     * 删除活动的全部事件
+     * @param activityId
+     */
+    public void cancel(Long activityId) {
+        afterCommit(() -> stringRedisTemplate.opsForZSet().remove(key(activityId),
+                member(activityId, OPEN_REGISTRATION), member(activityId, OPEN_CHECKIN), member(activityId, SETTLE)));
+    }
+
+    /**
+     * 领取并处理本节点持有的分片中到期的事件
+     */
+    @Scheduled(fixedDelayString = "${manage.scheduler.poll-interval:200ms}")
+    public void poll() {
+        for (Integer shard : activityShardService.ownedShards()) {
+            if (activityShardService.owns(shard)) {
+                poll(shard);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void poll(int shard) {
+        String key = ACTIVITY_SCHEDULE_KEY + shard;
+        List<String> events = stringRedisTemplate.execute(SCHEDULE_SCRIPT, List.of(key),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(schedulerConfig.getBatchSize()));
+        if (events == null) {
+            return;
+        }
+        // 按事件类型分组，每组一次查询活动、一次批量转换
+        Map<String, List<Long>> groups = new LinkedHashMap<>();
+        for (String event : events) {
+            int separator = event.indexOf('|');
+            groups.computeIfAbsent(event.substring(separator + 1), type -> new ArrayList<>())
+                    .add(Long.valueOf(event.substring(0, separator)));
+        }
+        groups.forEach((type, activityIds) -> {
+            List<Long> failed;
+            try {
+                failed = fire(type, activityIds);
+            } catch (Exception e) {
+                log.error("活动 {} 的事件 {} 处理失败，稍后重试：{}", activityIds, type, e.getMessage());
+                failed = activityIds;
+            }
+            long retryAt = System.currentTimeMillis() + schedulerConfig.getRetryDelay().toMillis();
+            for (Long activityId : failed) {
+                stringRedisTemplate.opsForZSet().add(key, member(activityId, type), retryAt);
+            }
+        });
+    }
+
+    /**
+     * @return 处理失败、需要重试的活动
+     */
+    private List<Long> fire(String type, List<Long> activityIds) {
+        List<Activity> activities = activityMapper.selectByIdBatch(activityIds);
+        if (activities == null || activities.isEmpty()) {
+            return List.of();
+        }
+        switch (type) {
+            case OPEN_REGISTRATION -> {
+                activityTransitionService.openRegistrations(activities);
+                return List.of();
+            }
+            case OPEN_CHECKIN -> {
+                return activityTransitionService.openCheckins(activities);
+            }
+            case SETTLE -> {
+                return activityTransitionService.settle(activities);
+            }
+            default -> {
+                log.warn("未知的活动事件：{}", type);
+                return List.of();
+            }
+        }
+    }
+
+    private String key(Long activityId) {
+        return ACTIVITY_SCHEDULE_KEY + activityShardService.shard(activityId);
+    }
+
+    private void add(String key, Long activityId, String type, LocalDateTime time) {
+        if (time == null) {
+            return;
+        }
+        long score = time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        stringRedisTemplate.opsForZSet().add(key, member(activityId, type), score);
+    }
+
+    private static String member(Long activityId, String type) {
+        return activityId + "|" + type;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,187 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.SearchConfig;
+import com.activity.manage.mapper.ActivityMapper;
+import com.activity.manage.pojo.entity.Activity;
+import com.activity.manage.utils.NgramIndex;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.activity.manage.utils.constant.RedisConstant.ACTIVITY_SEARCH_CHANNEL;
+
+/**
+ * 活动搜索
+ * 在内存中为活动名称、简介和位置各维护一个 n-gram 倒排索引，启动时流式读取全部活动建立；
+ * 活动创建、修改、删除提交后通过 Redis 发布/订阅通知所有实例从数据库重新读取该活动并更新索引。
+ * 名称关键字同时匹配名称与简介，命中名称的排在前面；同时给出位置关键字时取两者的交集。
+ * 索引未建立完成或已关闭时返回 null，由调用方回退为数据库 like 匹配
+ */
+@Service
+@Slf4j
+public class ActivitySearchService implements MessageListener {
+
+    private static final int NAME_WEIGHT = 4;
+    private static final int LOCATION_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    @Autowired
+    private ActivityMapper activityMapper;
+    @Autowired
+    private SearchConfig searchConfig;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final NgramIndex names = new NgramIndex();
+    private final NgramIndex descriptions = new NgramIndex();
+    private final NgramIndex locations = new NgramIndex();
+    /**
+     * 建立索引期间收到变更通知的活动，建立完成后再重新读取一次，避免被建立时读到的旧数据覆盖
+     */
+    private final Set<Long> changedDuringBuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready;
+
+    @PostConstruct
+    public void init() {
+        if (!searchConfig.isEnabled()) {
+            return;
+        }
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(ACTIVITY_SEARCH_CHANNEL));
+        try {
+            activityMapper.loadSearchText(context -> index(context.getResultObject()));
+            names.trim();
+            descriptions.trim();
+            locations.trim();
+            ready = true;
+            changedDuringBuild.forEach(this::reload);
+            changedDuringBuild.clear();
+            log.info("活动搜索索引建立完成，共 {} 个活动", names.size());
+        } catch (Exception e) {
+            log.error("活动搜索索引建立失败，搜索回退为数据库查询：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按关键字搜索活动
+     * @param activityName 名称关键字，同时匹配简介
+     * @param location 位置关键字
+     * @return 按相关度排列的活动id；没有关键字或索引不可用时返回 null
+     */
+    public List<Long> search(String activityName, String location) {
+        if (!ready) {
+            return null;
+        }
+        long[] byName = names.search(activityName);
+        long[] byLocation = locations.search(location);
+        if (byName == null && byLocation == null) {
+            return null;
+        }
+        Map<Long, Integer> scores = new HashMap<>();
+        if (byName != null) {
+            score(scores, byName, NAME_WEIGHT);
+            score(scores, descriptions.search(activityName), DESCRIPTION_WEIGHT);
+        }
+        if (byLocation != null) {
+            if (byName == null) {
+                score(scores, byLocation, LOCATION_WEIGHT);
+            } else {
+                Map<Long, Integer> both = new HashMap<>();
+                for (long id : byLocation) {
+                    Integer score = scores.get(id);
+                    if (score != null) {
+                        both.put(id, score + LOCATION_WEIGHT);
+                    }
+                }
+                scores = both;
+            }
+        }
+        // 相关度相同时新创建的活动在前
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * 活动被创建、修改或删除，提交后更新本实例的索引并通知其他实例
+     * @param activityId
+     */
+    public void changed(Long activityId) {
+        if (!searchConfig.isEnabled()) {
+            return;
+        }
+        Runnable action = () -> {
+            reload(activityId);
+            stringRedisTemplate.convertAndSend(ACTIVITY_SEARCH_CHANNEL, activityId.toString());
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            Long activityId = Long.valueOf(body);
+            if (!ready) {
+                changedDuringBuild.add(activityId);
+            }
+            reload(activityId);
+        } catch (NumberFormatException e) {
+            log.warn("无法解析活动搜索广播消息：{}", body);
+        }
+    }
+
+    private void reload(Long activityId) {
+        Activity activity = activityMapper.selectById(activityId);
+        if (activity == null) {
+            names.remove(activityId);
+            descriptions.remove(activityId);
+            locations.remove(activityId);
+            return;
+        }
+        index(activity);
+    }
+
+    private void index(Activity activity) {
+        names.put(activity.getId(), activity.getActivityName());
+        descriptions.put(activity.getId(), activity.getActivityDescription());
+        locations.put(activity.getId(), activity.getLocation());
+    }
+
+    private static void score(Map<Long, Integer> scores, long[] ids, int weight) {
+        if (ids == null) {
+            return;
+        }
+        for (long id : ids) {
+            scores.merge(id, weight, Integer::sum);
+        }
+    }
+}
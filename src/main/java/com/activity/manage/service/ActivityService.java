@@ -1,8 +1,10 @@
 package com.activity.manage.service;
 
 import cn.hutool.core.bean.BeanUtil;
+import com.activity.manage.config.SearchConfig;
 import com.activity.manage.mapper.ActivityMapper;
 import com.activity.manage.pojo.dto.ActivityDTO;
+import com.activity.manage.pojo.dto.ActivityQueryDTO;
 import com.activity.manage.pojo.dto.AdministratorDTO;
 import com.activity.manage.pojo.entity.Activity;
 import com.activity.manage.utils.AdminHolder;
@@ -13,6 +15,7 @@ import com.activity.manage.utils.exception.ActivityNotFoundException;
 import com.activity.manage.utils.exception.AdminTokenExpiredException;
 import com.activity.manage.utils.exception.BaseException;
 import com.activity.manage.utils.result.Result;
+import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import lombok.extern.slf4j.Slf4j;
@@ -23,9 +26,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-
-import static com.activity.manage.utils.constant.RedisConstant.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -37,6 +43,20 @@ public class ActivityService {
     private StringRedisTemplate stringRedisTemplate;
     @Autowired
     private AliOSSUtil aliOSSUtil;
+    @Autowired
+    private SeatInventoryService seatInventoryService;
+    @Autowired
+    private SoldOutService soldOutService;
+    @Autowired
+    private GeofenceService geofenceService;
+    @Autowired
+    private ActivityScheduleService activityScheduleService;
+    @Autowired
+    private CheckinRosterService checkinRosterService;
+    @Autowired
+    private ActivitySearchService activitySearchService;
+    @Autowired
+    private SearchConfig searchConfig;
 
     /**
      * 1. 创建活动 (POST /activity)
@@ -57,11 +77,14 @@ public class ActivityService {
         activity.setCreatorId(admin.getId());
         activity.setCreateTime(LocalDateTime.now());
         activity.setUpdateTime(LocalDateTime.now());
-        activity.setStatus(ActivityConstant.UNRELEASED); // 初始状态：未发布
+        activity.setStatus(deriveStatus(activity, LocalDateTime.now()));
         activity.setCurrentParticipants(0);
 
         // 4. 插入数据库
         activityMapper.insert(activity);
+        // 写入开放报名、开放签到的调度事件
+        activityScheduleService.schedule(activity);
+        activitySearchService.changed(activity.getId());
 
         // 5. 返回活动ID
         return Result.success(activity.getId());
@@ -70,34 +93,82 @@ public class ActivityService {
     /**
      * 2. 查询/搜索活动 (GET /activity)
      */
-    public Result<PageInfo<Activity>> searchActivities(String activityName, Integer status, Boolean isFull, String location, int pageNum, int pageSize) {
-        // 1. 启动 PageHelper 分页
-        PageHelper.startPage(pageNum, pageSize);
+    public Result<PageInfo<Activity>> searchActivities(String activityName, Integer status, Boolean isFull, Integer minRemaining,
+                                                       String location, int pageNum, int pageSize) {
+        // 1. 名称与位置关键字由搜索索引得到按相关度排列的候选活动，索引不可用时为 null
+        List<Long> ids = activitySearchService.search(activityName, location);
 
-        // 2. 构造查询参数
-        Activity activity = Activity.builder()
-                .activityName(activityName)
-                .status(status)
-                .location(location)
-                .build();
-
-        // 3. 执行查询
-        List<Activity> list = activityMapper.select(activity);
-        if (isFull != null) {
-            list = list.stream()
-                    .filter(a -> (a.getMaxParticipants() - a.getCurrentParticipants() == 0) == isFull)
-                    .toList();
+        // 2. 只有关键字条件时直接按相关度分页，只查询当前页的活动
+        PageInfo<Activity> pageInfo;
+        if (ids != null && status == null && isFull == null && minRemaining == null) {
+            pageInfo = page(ids, pageNum, pageSize);
+        } else {
+            // 3. 构造查询参数，状态按时间范围过滤，名额按 remaining 列过滤
+            ActivityQueryDTO query = ActivityQueryDTO.builder()
+                    .status(status)
+                    .isFull(isFull)
+                    .minRemaining(minRemaining)
+                    .build();
+            if (ids != null) {
+                // 候选活动按块交给数据库过滤，关键字的匹配语义与只有关键字时一致，仍按相关度分页
+                pageInfo = page(filter(ids, query), pageNum, pageSize);
+            } else {
+                // 4. 索引不可用时由数据库 like 匹配名称与位置，启动 PageHelper 分页并执行查询
+                query.setActivityName(activityName);
+                query.setLocation(location);
+                PageHelper.startPage(pageNum, pageSize);
+                pageInfo = new PageInfo<>(activityMapper.select(query));
+            }
         }
 
-        if(list.isEmpty()) {
+        if(pageInfo.getList().isEmpty()) {
             throw new ActivityNotFoundException();
         }
-
-        // 4. 封装分页结果
-        PageInfo<Activity> pageInfo = new PageInfo<>(list);
+        LocalDateTime now = LocalDateTime.now();
+        pageInfo.getList().forEach(a -> a.setStatus(deriveStatus(a, now)));
         return Result.success(pageInfo);
     }
 
+    /**
+     * 每次取 maxCandidates 个候选活动交给数据库按其余条件过滤，保留满足条件的活动及其相关度顺序
+     */
+    private List<Long> filter(List<Long> ids, ActivityQueryDTO query) {
+        int chunk = Math.max(searchConfig.getMaxCandidates(), 1);
+        List<Long> filtered = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += chunk) {
+            List<Long> candidates = ids.subList(from, Math.min(from + chunk, ids.size()));
+            query.setIds(candidates);
+            Set<Long> matched = new HashSet<>(activityMapper.selectIds(query));
+            for (Long id : candidates) {
+                if (matched.contains(id)) {
+                    filtered.add(id);
+                }
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * 对按相关度排列的活动id分页，当前页的活动批量查询后按原顺序排列
+     */
+    private PageInfo<Activity> page(List<Long> ids, int pageNum, int pageSize) {
+        Page<Activity> page = new Page<>(pageNum, pageSize);
+        page.setTotal(ids.size());
+        int from = Math.max(pageNum - 1, 0) * pageSize;
+        if (pageSize > 0 && from < ids.size()) {
+            List<Long> pageIds = ids.subList(from, Math.min(from + pageSize, ids.size()));
+            Map<Long, Activity> activities = activityMapper.selectByIdBatch(pageIds).stream()
+                    .collect(Collectors.toMap(Activity::getId, a -> a));
+            for (Long id : pageIds) {
+                Activity activity = activities.get(id);
+                if (activity != null) {
+                    page.add(activity);
+                }
+            }
+        }
+        return new PageInfo<>(page);
+    }
+
     /**
      * 3. 获取活动详情 (GET /activity/{id})
      */
@@ -106,9 +177,36 @@ public class ActivityService {
         if (activity == null) {
             throw new ActivityNotFoundException();
         }
+        activity.setStatus(deriveStatus(activity, LocalDateTime.now()));
         return Result.success(activity);
     }
 
+    /**
+     * 由活动的各个时间推导活动状态，与 ActivityMapper.xml 中按状态过滤的条件一致。
+     * 状态不再由定时任务写入数据库，读取时计算，精确到秒；未设置发布时间的活动视为创建即发布
+     * @param activity
+     * @param now
+     * @return ActivityConstant 中的状态
+     */
+    public static int deriveStatus(Activity activity, LocalDateTime now) {
+        if (activity.getReleaseTime() != null && now.isBefore(activity.getReleaseTime())) {
+            return ActivityConstant.UNRELEASED;
+        }
+        if (now.isBefore(activity.getRegistrationStart())) {
+            return ActivityConstant.UNREGISTERED;
+        }
+        if (now.isBefore(activity.getRegistrationEnd())) {
+            return ActivityConstant.REGISTERING;
+        }
+        if (now.isBefore(activity.getActivityStart())) {
+            return ActivityConstant.UNSTARTED;
+        }
+        if (now.isBefore(activity.getActivityEnd())) {
+            return ActivityConstant.UNDERGOING;
+        }
+        return ActivityConstant.TERMINATED;
+    }
+
     /**
      * 4. 更新活动 (PUT /activity/{id})
      */
@@ -138,6 +236,9 @@ public class ActivityService {
         
         // 按照新报名时间、新活动开始时间、新报名人数更新redis中的过期时间和其他数据
         updateActivityRedisData(dbActivity, activityToUpdate);
+        // 时间可能变化，按更新后的活动重新写入调度事件
+        activityScheduleService.schedule(activityMapper.selectById(id));
+        activitySearchService.changed(id);
         
         return Result.success();
     }
@@ -157,13 +258,12 @@ public class ActivityService {
         activityMapper.deleteById(id);
 
         // 3. 清理redis相关数据
-        String registrationKey = REGISTRATION_ACTIVITY_KEY + id;
-        String activityUserKey = CHECKIN_USER_KEY + id;
-        String activityLocationKey = CHECKIN_LOCATION_KEY + id;
-
-        stringRedisTemplate.delete(registrationKey);
-        stringRedisTemplate.delete(activityUserKey);
-        stringRedisTemplate.delete(activityLocationKey);
+        stringRedisTemplate.delete(seatInventoryService.keys(id));
+        seatInventoryService.evict(id);
+        stringRedisTemplate.delete(checkinRosterService.keys(id));
+        geofenceService.evict(id);
+        activityScheduleService.cancel(id);
+        activitySearchService.changed(id);
 
         // 删除OSS上的二维码
         if (dbActivity.getQrCodeOssUrl() != null && !dbActivity.getQrCodeOssUrl().isEmpty()) {
@@ -234,23 +334,16 @@ public class ActivityService {
              !oldActivity.getRegistrationEnd().equals(newActivity.getRegistrationEnd()));
         
         // 如果报名相关信息发生变化，更新Redis中的报名数据
-        if (registrationChanged) {
-            String registrationKey = REGISTRATION_ACTIVITY_KEY + activityId;
-            
-            // 如果Redis中存在该活动的报名数据，则更新
-            String currentParticipantsStr = stringRedisTemplate.opsForValue().get(registrationKey);
-            if (currentParticipantsStr != null) {
-                // 计算剩余名额
-                int maxParticipants = newActivity.getMaxParticipants() != null ? newActivity.getMaxParticipants() : 0;
-                int currentParticipants = oldActivity.getCurrentParticipants() != null ? oldActivity.getCurrentParticipants() : 0;
-                
-                // 更新最大报名人数，并保持当前已报名人数不变
-                Duration duration = Duration.between(now, newActivity.getRegistrationEnd());
-                stringRedisTemplate.opsForValue().set(
-                    registrationKey, 
-                    String.valueOf(maxParticipants), 
-                    duration
-                );
+        if (registrationChanged && seatInventoryService.isInitialized(activityId)) {
+            // 按最大报名人数的变化量调整剩余名额，保持当前已报名人数不变
+            int oldMax = oldActivity.getMaxParticipants() != null ? oldActivity.getMaxParticipants() : 0;
+            int newMax = newActivity.getMaxParticipants() != null ? newActivity.getMaxParticipants() : oldMax;
+            LocalDateTime registrationEnd = newActivity.getRegistrationEnd() != null
+                    ? newActivity.getRegistrationEnd() : oldActivity.getRegistrationEnd();
+            Duration duration = Duration.between(now, registrationEnd);
+            seatInventoryService.adjust(activityId, newMax - oldMax, duration);
+            if (newMax > oldMax) {
+                soldOutService.clear(activityId);
             }
         }
         
@@ -269,5 +362,13 @@ public class ActivityService {
         if (activityTimeChanged) {
             log.info("活动 {} 的时间或位置信息已更新，将在下次定时任务执行时生效", activityId);
         }
+
+        // 位置或签到范围变化时丢弃各实例缓存的签到范围，下次签到时重新加载
+        boolean geofenceChanged = activityTimeChanged
+                || newActivity.getCheckinRadius() != null
+                || newActivity.getGeofence() != null;
+        if (geofenceChanged) {
+            geofenceService.evict(activityId);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,214 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.ActivityShardConfig;
+import com.activity.manage.utils.ConsistentHashRing;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.activity.manage.utils.constant.RedisConstant.*;
+
+/**
+ * 活动定时任务分片
+ * 活动按ID哈希到固定数量的分片，各节点定期向Redis写入心跳，按最高随机权重（rendezvous）哈希在存活节点间分配分片，
+ * 每个分片由持有其租约的节点独占处理（调度事件、兜底扫描）。租约带有全局递增的防护令牌，
+ * 需要写入共享数据时带上令牌，令牌落后于上一次写入的请求（如长时间停顿后租约已被接管的节点）应被拒绝，
+ * 例如开放签到时重置签到数据（见 CheckinRosterService.open）。
+ * 节点下线后心跳过期，分片重新分配，原租约过期后由新的节点获得
+ */
+@Slf4j
+@Service
+public class ActivityShardService {
+
+    @Autowired
+    private ActivityShardConfig activityShardConfig;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("activityLease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("activityLeaseRelease.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * @param token 防护令牌
+     * @param validUntil 本地认为租约有效的截止时间戳（毫秒），以发起续约的时间计算，早于Redis中的实际过期时间
+     */
+    private record Lease(long token, long validUntil) {
+    }
+
+    private final Map<Integer, Lease> leases = new ConcurrentHashMap<>();
+    private ThreadPoolTaskScheduler scheduler;
+    private String nodeId;
+
+    @PostConstruct
+    public void start() {
+        nodeId = resolveNodeId();
+        Gauge.builder("manage.activity.shard.owned", leases, Map::size)
+                .description("本节点持有租约的活动分片数")
+                .register(meterRegistry);
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("activity-shard-");
+        scheduler.setPoolSize(1);
+        scheduler.initialize();
+        scheduler.scheduleWithFixedDelay(this::rebalance, activityShardConfig.getRenewInterval());
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdown();
+        leases.keySet().forEach(this::release);
+        // 主动摘除心跳，其余节点在下一轮即可接管分片
+        stringRedisTemplate.opsForZSet().remove(ACTIVITY_SHARD_NODES_KEY, nodeId);
+    }
+
+    /**
+     * @param activityId
+     * @return 活动所属分片
+     */
+    public int shard(Long activityId) {
+        return Math.floorMod(ConsistentHashRing.hash(activityId.toString()), activityShardConfig.getCount());
+    }
+
+    /**
+     * 获取本节点处理该分片时使用的防护令牌
+     * @param shard
+     * @return 令牌，本节点未持有租约或租约可能已过期时返回 null
+     */
+    public Long fence(int shard) {
+        Lease lease = leases.get(shard);
+        return lease != null && lease.validUntil() > System.currentTimeMillis() ? lease.token() : null;
+    }
+
+    /**
+     * @param activityId
+     * @return 本节点处理该活动时使用的防护令牌，本节点未持有活动所属分片的租约时返回 null
+     */
+    public Long fenceActivity(Long activityId) {
+        return fence(shard(activityId));
+    }
+
+    /**
+     * @param shard
+     * @return 本节点是否持有该分片的有效租约
+     */
+    public boolean owns(int shard) {
+        return fence(shard) != null;
+    }
+
+    /**
+     * @param activityId
+     * @return 本节点是否负责该活动
+     */
+    public boolean ownsActivity(Long activityId) {
+        return owns(shard(activityId));
+    }
+
+    /**
+     * @return 本节点当前持有租约的分片
+     */
+    public Set<Integer> ownedShards() {
+        return leases.keySet();
+    }
+
+    /**
+     * 写心跳、清理过期节点，并按存活节点获取、续约或释放分片租约
+     */
+    void rebalance() {
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().add(ACTIVITY_SHARD_NODES_KEY, nodeId, now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(ACTIVITY_SHARD_NODES_KEY,
+                    0, now - activityShardConfig.getNodeTtl().toMillis());
+            Set<String> nodes = stringRedisTemplate.opsForZSet().range(ACTIVITY_SHARD_NODES_KEY, 0, -1);
+            if (nodes == null || nodes.isEmpty()) {
+                return;
+            }
+            for (int shard = 0; shard < activityShardConfig.getCount(); shard++) {
+                if (nodeId.equals(owner(shard, nodes))) {
+                    acquire(shard);
+                } else if (leases.containsKey(shard)) {
+                    release(shard);
+                }
+            }
+        } catch (Exception e) {
+            // Redis 暂不可用时不续约，本地租约到期后自动停止处理
+            log.warn("活动分片租约续约失败：{}", e.getMessage());
+        }
+    }
+
+    private void acquire(int shard) {
+        long start = System.currentTimeMillis();
+        long ttl = activityShardConfig.getLeaseTtl().toMillis();
+        Long token = stringRedisTemplate.execute(LEASE_SCRIPT,
+                List.of(ACTIVITY_SHARD_LEASE_KEY + shard, ACTIVITY_SHARD_FENCE_KEY),
+                nodeId, String.valueOf(ttl));
+        if (token == null || token < 0) {
+            // 原持有者的租约尚未过期，下一轮再试
+            if (leases.remove(shard) != null) {
+                log.warn("节点 {} 的活动分片 {} 租约已被其他节点持有", nodeId, shard);
+            }
+            return;
+        }
+        Lease previous = leases.put(shard, new Lease(token, start + ttl));
+        if (previous == null) {
+            log.info("节点 {} 获得活动分片 {}，令牌 {}", nodeId, shard, token);
+        }
+    }
+
+    private void release(int shard) {
+        Lease lease = leases.remove(shard);
+        if (lease == null) {
+            return;
+        }
+        stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(ACTIVITY_SHARD_LEASE_KEY + shard),
+                nodeId + "|" + lease.token());
+        log.info("节点 {} 释放活动分片 {}", nodeId, shard);
+    }
+
+    private static String owner(int shard, Set<String> nodes) {
+        String owner = null;
+        int best = Integer.MIN_VALUE;
+        for (String node : nodes) {
+            int weight = ConsistentHashRing.hash(node + "#" + shard);
+            if (owner == null || weight > best || (weight == best && node.compareTo(owner) < 0)) {
+                owner = node;
+                best = weight;
+            }
+        }
+        return owner;
+    }
+
+    private static String resolveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + ":" + ManagementFactory.getRuntimeMXBean().getPid();
+    }
+}
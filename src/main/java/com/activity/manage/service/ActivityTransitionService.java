@@ -0,0 +1,208 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.CheckinConfig;
+import com.activity.manage.mapper.ActivityMapper;
+import com.activity.manage.pojo.entity.Activity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.activity.manage.utils.constant.RedisConstant.CHECKIN_LOCATION_KEY;
+
+/**
+ * 活动时间点到达时的 Redis 预热
+ * 由持有活动所属分片租约的节点在时间点到达时批量触发，兜底扫描也会调用；每个转换都先检查 Redis 中是否已完成，可以重复执行。
+ * 开放签到会重置签到数据，带上分片租约的防护令牌，由 CheckinRosterService 拒绝令牌落后或与其他加载并发的请求。
+ * 预热通过管道批量完成。活动状态由时间推导（见 ActivityService.deriveStatus），这里不写状态。
+ * 活动结束时结算：按 Redis 中的签到记录补写数据库、重新统计报名人数与签到人数，然后释放该活动的全部 Redis 键
+ */
+@Service
+@Slf4j
+public class ActivityTransitionService {
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private SeatInventoryService seatInventoryService;
+    @Autowired
+    private CheckinRosterService checkinRosterService;
+    @Autowired
+    private GeofenceService geofenceService;
+    @Autowired
+    private CheckinDashboardService checkinDashboardService;
+    @Autowired
+    private CheckinConfig checkinConfig;
+    @Autowired
+    private ActivityMapper activityMapper;
+    @Autowired
+    private ParticipantCountService participantCountService;
+    @Autowired
+    private ActivityShardService activityShardService;
+
+    /**
+     * 批量开放报名：一次管道往返初始化名额
+     * @param activities 到达报名开始时间的活动
+     */
+    public void openRegistrations(List<Activity> activities) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, Integer> seats = new LinkedHashMap<>();
+        Map<Long, Duration> ttls = new LinkedHashMap<>();
+        for (Activity activity : activities) {
+            Long activityId = activity.getId();
+            // 检查活动的registrationEnd是否为null
+            if (activity.getRegistrationEnd() == null) {
+                log.warn("活动 {} 的 registrationEnd 为 null，跳过处理", activityId);
+                continue;
+            }
+            if (activity.getRegistrationStart() == null || now.isBefore(activity.getRegistrationStart())
+                    || !now.isBefore(activity.getRegistrationEnd())) {
+                continue;
+            }
+            seats.put(activityId, activity.getMaxParticipants());
+            ttls.put(activityId, Duration.between(now, activity.getRegistrationEnd()));
+        }
+        if (seats.isEmpty()) {
+            return;
+        }
+        // 初始化名额，分片模式下名额拆分到各个分片
+        seatInventoryService.initAll(seats, ttls);
+        log.info("开放报名的活动：{}", seats.keySet());
+    }
+
+    /**
+     * 批量开放签到：逐个加载签到名单与签到范围
+     * @param activities 到达活动开始时间的活动
+     * @return 处理失败、需要重试的活动
+     */
+    public List<Long> openCheckins(List<Activity> activities) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Activity> candidates = new ArrayList<>();
+        for (Activity activity : activities) {
+            // 检查活动的activityEnd是否为null
+            if (activity.getActivityEnd() == null) {
+                log.warn("活动 {} 的 activityEnd 为 null，跳过处理", activity.getId());
+                continue;
+            }
+            if (activity.getActivityStart() != null && !now.isBefore(activity.getActivityStart())
+                    && now.isBefore(activity.getActivityEnd())) {
+                candidates.add(activity);
+            }
+        }
+        List<Long> failed = new ArrayList<>();
+        if (candidates.isEmpty()) {
+            return failed;
+        }
+        // 一次管道往返查询各活动的签到是否已开放
+        List<Object> opened = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                candidates.forEach(activity -> operations.hasKey(CHECKIN_LOCATION_KEY + activity.getId()));
+                return null;
+            }
+        });
+        for (int i = 0; i < candidates.size(); i++) {
+            Activity activity = candidates.get(i);
+            Long activityId = activity.getId();
+            // 签到坐标已写入说明签到已开放
+            if (Boolean.TRUE.equals(opened.get(i))) {
+                continue;
+            }
+            // 只有持有活动所属分片租约时才加载，令牌用于拒绝租约已被接管后的迟到加载
+            Long fence = activityShardService.fenceActivity(activityId);
+            if (fence == null) {
+                continue;
+            }
+            try {
+                openCheckin(activity, now, fence);
+            } catch (Exception e) {
+                log.error("活动 {} 开放签到失败：{}", activityId, e.getMessage());
+                failed.add(activityId);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 批量结算已结束的活动：逐个补写签到状态，一条 UPDATE 写入签到人数与结算时间，
+     * 再在一次管道往返内 UNLINK 这些活动的全部键
+     * @param activities 到达活动结束时间的活动
+     * @return 处理失败、需要重试的活动
+     */
+    public List<Long> settle(List<Activity> activities) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> settled = new ArrayList<>();
+        List<Long> failed = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (Activity activity : activities) {
+            Long activityId = activity.getId();
+            if (activity.getActivityEnd() == null || now.isBefore(activity.getActivityEnd())) {
+                continue;
+            }
+            // 已结算的活动只需再释放一次键
+            if (activity.getSettleTime() == null) {
+                try {
+                    int rows = checkinRosterService.reconcile(activityId);
+                    if (rows > 0) {
+                        log.info("活动 {} 结算时补写了 {} 条签到记录", activityId, rows);
+                    }
+                    settled.add(activityId);
+                } catch (Exception e) {
+                    log.error("活动 {} 签到对账失败：{}", activityId, e.getMessage());
+                    failed.add(activityId);
+                    continue;
+                }
+            }
+            keys.addAll(seatInventoryService.keys(activityId));
+            keys.addAll(checkinRosterService.keys(activityId));
+            seatInventoryService.evict(activityId);
+        }
+        if (!settled.isEmpty()) {
+            // 先写回本节点尚未合并的报名人数变化，结算时按报名记录重新统计，纠正节点宕机丢失的变化量
+            participantCountService.flush();
+            activityMapper.settleBatch(settled, now);
+            log.info("结算的活动：{}", settled);
+        }
+        if (!keys.isEmpty()) {
+            // 逐个 UNLINK，分片的名额键落在不同的哈希槽，不能合并为一条命令
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    keys.forEach(operations::unlink);
+                    return null;
+                }
+            });
+        }
+        return failed;
+    }
+
+    private void openCheckin(Activity activity, LocalDateTime now, long fence) {
+        Long activityId = activity.getId();
+        // 分批加载签到名单并开放签到，签到数据保留到结算完成之后
+        Duration duration = Duration.between(now, activity.getActivityEnd()).plus(checkinConfig.getSettleGrace());
+        long result = checkinRosterService.open(activity, duration, fence);
+        if(result == CheckinRosterService.SKIPPED) {
+            return;
+        }
+        if(result == 0) {
+            log.warn("该活动无人报名，不生成签到数据");
+            return;
+        }
+        log.info("活动 {} 处理成功，应签到人数为 {}", activityId, result);
+        // 预先加载签到范围，签到开始后的几何判断不再访问数据库
+        geofenceService.load(activity);
+        // 通知签到看板应签到人数
+        checkinDashboardService.opened(activityId, result);
+    }
+}
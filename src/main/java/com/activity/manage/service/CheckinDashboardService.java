@@ -0,0 +1,261 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.DashboardConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static com.activity.manage.utils.constant.RedisConstant.*;
+
+/**
+ * 签到看板
+ * 签到脚本在签到成功时更新 checkin:stats:{id} 与 checkin:recent:{id}，并在 checkin:event 频道广播；
+ * 本服务只为本实例上有人订阅的活动维护内存中的看板，收到广播后仅标记为待推送，
+ * 按 frameInterval 定时把每个活动的最新状态序列化一次、推送给该活动的全部订阅者，
+ * 签到再密集，每个订阅者每秒也只收到固定帧数，且整个过程不查询数据库
+ */
+@Service
+@Slf4j
+public class CheckinDashboardService implements MessageListener {
+
+    private static final String CHECKIN = "checkin|";
+    private static final String OPEN = "open|";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Autowired
+    private DashboardConfig dashboardConfig;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 单个活动的看板状态
+     */
+    private class Board {
+        final Long activityId;
+        final Set<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+        final Deque<Map<String, Object>> recent = new ArrayDeque<>();
+        /**
+         * 首次从 Redis 加载完成后完成，加载中的看板不推送
+         */
+        final CompletableFuture<Void> loaded = new CompletableFuture<>();
+        long expected;
+        long checked;
+        volatile boolean dirty;
+
+        Board(Long activityId) {
+            this.activityId = activityId;
+        }
+
+        boolean ready() {
+            return loaded.isDone() && !loaded.isCompletedExceptionally();
+        }
+
+        synchronized void load() {
+            List<Object> stats = stringRedisTemplate.opsForHash()
+                    .multiGet(CHECKIN_STATS_KEY + activityId, List.of("expected", "checked"));
+            expected = parse(stats.get(0));
+            checked = Math.max(checked, parse(stats.get(1)));
+            List<String> entries = stringRedisTemplate.opsForList()
+                    .range(CHECKIN_RECENT_KEY + activityId, 0, dashboardConfig.getRecentSize() - 1);
+            recent.clear();
+            if (entries != null) {
+                entries.forEach(entry -> recent.addLast(toRecent(entry)));
+            }
+        }
+
+        synchronized void checkin(long count, String entry) {
+            checked = Math.max(checked, count);
+            recent.addFirst(toRecent(entry));
+            while (recent.size() > dashboardConfig.getRecentSize()) {
+                recent.removeLast();
+            }
+            dirty = true;
+        }
+
+        synchronized void open(long count) {
+            expected = count;
+            checked = 0;
+            recent.clear();
+            dirty = true;
+        }
+
+        synchronized TextMessage frame() throws JsonProcessingException {
+            Map<String, Object> frame = new LinkedHashMap<>();
+            frame.put("activityId", activityId);
+            frame.put("expected", expected);
+            frame.put("checkedIn", checked);
+            frame.put("recent", new ArrayList<>(recent));
+            return new TextMessage(OBJECT_MAPPER.writeValueAsString(frame));
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Board> boards = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHECKIN_EVENT_CHANNEL));
+    }
+
+    /**
+     * 订阅活动看板，立即推送一帧当前状态
+     * @param session
+     * @param activityId
+     */
+    public void join(WebSocketSession session, Long activityId) throws IOException {
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session,
+                (int) dashboardConfig.getSendTimeLimit().toMillis(),
+                (int) dashboardConfig.getBufferLimit().toBytes());
+        session.getAttributes().put(Board.class.getName(), decorated);
+        // 加入与离开都在 compute 中完成，同一活动的加入和释放看板不会交错；compute 中只增删订阅者
+        Board created = new Board(activityId);
+        Board board = boards.compute(activityId, (id, existing) -> {
+            Board joined = existing == null ? created : existing;
+            joined.sessions.add(decorated);
+            return joined;
+        });
+        if (board == created) {
+            // 同一活动只由放入新看板的线程从 Redis 加载，其余订阅者等待同一个加载结果；加载在 map 之外进行
+            try {
+                board.load();
+                board.loaded.complete(null);
+            } catch (RuntimeException e) {
+                boards.remove(activityId, board);
+                board.loaded.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            board.loaded.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        decorated.sendMessage(board.frame());
+    }
+
+    /**
+     * 取消订阅，活动没有订阅者后释放看板
+     * @param session
+     * @param activityId
+     */
+    public void leave(WebSocketSession session, Long activityId) {
+        Object decorated = session.getAttributes().get(Board.class.getName());
+        if (decorated == null) {
+            return;
+        }
+        boards.computeIfPresent(activityId, (id, board) -> {
+            board.sessions.remove(decorated);
+            return board.sessions.isEmpty() ? null : board;
+        });
+    }
+
+    /**
+     * 签到开放后通知各实例重置看板
+     * @param activityId
+     * @param expected 应签到人数
+     */
+    public void opened(Long activityId, long expected) {
+        stringRedisTemplate.convertAndSend(CHECKIN_EVENT_CHANNEL, OPEN + activityId + "|" + expected);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            if (body.startsWith(CHECKIN)) {
+                // checkin|活动id|已签到人数|手机号|时间戳
+                String[] parts = body.split("\\|");
+                Board board = boards.get(Long.valueOf(parts[1]));
+                if (board != null) {
+                    board.checkin(Long.parseLong(parts[2]), parts[3] + "|" + parts[4]);
+                }
+            } else if (body.startsWith(OPEN)) {
+                // open|活动id|应签到人数
+                String[] parts = body.split("\\|");
+                Board board = boards.get(Long.valueOf(parts[1]));
+                if (board != null) {
+                    board.open(Long.parseLong(parts[2]));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("无法解析签到广播消息：{}", body);
+        }
+    }
+
+    /**
+     * 把有变化的看板推送给订阅者，每个活动每帧只序列化一次
+     */
+    @Scheduled(fixedDelayString = "${manage.dashboard.frame-interval:250ms}")
+    public void flush() {
+        for (Board board : boards.values()) {
+            if (!board.dirty || !board.ready()) {
+                // 加载中的看板保留待推送标记，加载完成后的下一帧再推送
+                continue;
+            }
+            board.dirty = false;
+            TextMessage frame;
+            try {
+                frame = board.frame();
+            } catch (JsonProcessingException e) {
+                log.warn("看板数据序列化失败：{}", e.getMessage());
+                continue;
+            }
+            for (WebSocketSession session : board.sessions) {
+                try {
+                    session.sendMessage(frame);
+                } catch (Exception e) {
+                    // 发送超时或缓冲溢出的慢连接直接断开，不拖累其他订阅者
+                    board.sessions.remove(session);
+                    closeQuietly(session);
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(WebSocketSession session) {
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static Map<String, Object> toRecent(String entry) {
+        // 手机号|时间戳，手机号中间四位打码
+        int separator = entry.indexOf('|');
+        String phone = separator >= 0 ? entry.substring(0, separator) : entry;
+        long time = separator >= 0 ? Long.parseLong(entry.substring(separator + 1)) : 0;
+        if (phone.length() == 11) {
+            phone = phone.substring(0, 3) + "****" + phone.substring(7);
+        }
+        Map<String, Object> recent = new LinkedHashMap<>();
+        recent.put("phone", phone);
+        recent.put("time", time);
+        return recent;
+    }
+
+    private static long parse(Object value) {
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+}
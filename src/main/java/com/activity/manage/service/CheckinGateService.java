@@ -0,0 +1,161 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.CheckinConfig;
+import com.activity.manage.config.DashboardConfig;
+import com.activity.manage.config.PipelineConfig;
+import com.activity.manage.pojo.dto.RegistrationCheckinDTO;
+import com.activity.manage.utils.GeofenceIndex;
+import com.activity.manage.utils.RosterIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.activity.manage.utils.constant.RedisConstant.*;
+
+/**
+ * 签到校验
+ * 签到开放时活动坐标与签到半径写入 checkin:location:{id} 哈希作为开放标记，签到状态存放在 checkin:bitmap:{id} 位图中；
+ * 签到范围由 GeofenceService、报名资格由 CheckinRosterService 缓存在本地判断，不访问Redis；
+ * 通过后再由一个Lua脚本在一次往返内完成置位和（Redis Stream流水线下）追加签到事件。
+ * 启用动态签到码时改为本地校验签到码，Redis 只记录一次性的已签到标记
+ */
+@Service
+@Slf4j
+public class CheckinGateService {
+
+    /**
+     * 签到结果：成功
+     */
+    public static final int CHECKED_IN = 0;
+    /**
+     * 签到结果：签到未开放
+     */
+    public static final int NOT_OPEN = 1;
+    /**
+     * 签到结果：未报名
+     */
+    public static final int NOT_REGISTERED = 2;
+    /**
+     * 签到结果：超出签到范围
+     */
+    public static final int OUT_OF_RANGE = 3;
+    /**
+     * 签到结果：动态签到码无效或已过期
+     */
+    public static final int INVALID_TOKEN = 4;
+    /**
+     * 签到结果：已经签到过
+     */
+    public static final int ALREADY_CHECKED_IN = 5;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private PipelineConfig pipelineConfig;
+    @Autowired
+    private GeofenceService geofenceService;
+    @Autowired
+    private CheckinTokenService checkinTokenService;
+    @Autowired
+    private CheckinRosterService checkinRosterService;
+    @Autowired
+    private CheckinConfig checkinConfig;
+    @Autowired
+    private DashboardConfig dashboardConfig;
+
+    private static final DefaultRedisScript<Long> CHECKIN_SCRIPT;
+    private static final DefaultRedisScript<Long> CHECKIN_TOKEN_SCRIPT;
+    static {
+        CHECKIN_SCRIPT = new DefaultRedisScript<>();
+        CHECKIN_SCRIPT.setLocation(new ClassPathResource("checkin.lua"));
+        CHECKIN_SCRIPT.setResultType(Long.class);
+        CHECKIN_TOKEN_SCRIPT = new DefaultRedisScript<>();
+        CHECKIN_TOKEN_SCRIPT.setLocation(new ClassPathResource("checkinToken.lua"));
+        CHECKIN_TOKEN_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 校验并完成签到
+     * @param registrationCheckinDTO
+     * @return 签到结果
+     */
+    public int checkin(RegistrationCheckinDTO registrationCheckinDTO) {
+        Long activityId = registrationCheckinDTO.getActivityId();
+        GeofenceIndex geofence = geofenceService.get(activityId);
+        if(geofence == null) {
+            return NOT_OPEN;
+        }
+        if(!geofence.contains(registrationCheckinDTO.getLatitude().doubleValue(),
+                registrationCheckinDTO.getLongitude().doubleValue())) {
+            return OUT_OF_RANGE;
+        }
+        if(checkinTokenService.isEnabled()) {
+            return checkinWithToken(registrationCheckinDTO);
+        }
+        RosterIndex roster = checkinRosterService.index(activityId);
+        if(roster == null) {
+            return NOT_OPEN;
+        }
+        int seq = roster.seq(registrationCheckinDTO.getPhone());
+        if(seq < 0) {
+            return NOT_REGISTERED;
+        }
+        List<String> keys = new ArrayList<>(List.of(CHECKIN_BITMAP_KEY + activityId, CHECKIN_LOCATION_KEY + activityId,
+                CHECKIN_STATS_KEY + activityId, CHECKIN_RECENT_KEY + activityId));
+        List<String> args = new ArrayList<>();
+        args.add(registrationCheckinDTO.getPhone());
+        addDashboardArgs(args, activityId);
+        args.add(String.valueOf(seq));
+        if(pipelineConfig.isRedisStream()) {
+            keys.add(CHECKIN_STREAM_KEY);
+            args.addAll(StreamPipelineService.checkinFields(registrationCheckinDTO));
+        }
+        Long result = stringRedisTemplate.execute(CHECKIN_SCRIPT, keys, args.toArray());
+        return result == null ? NOT_OPEN : result.intValue();
+    }
+
+    /**
+     * 动态签到码模式：签到码与是否报名都在本地校验，Redis 只写入一次性的已签到标记
+     */
+    private int checkinWithToken(RegistrationCheckinDTO registrationCheckinDTO) {
+        Long activityId = registrationCheckinDTO.getActivityId();
+        if(!checkinTokenService.verify(activityId, registrationCheckinDTO.getToken())) {
+            return INVALID_TOKEN;
+        }
+        RosterIndex roster = checkinRosterService.index(activityId);
+        if(roster == null) {
+            return NOT_OPEN;
+        }
+        if(roster.seq(registrationCheckinDTO.getPhone()) < 0) {
+            return NOT_REGISTERED;
+        }
+        List<String> keys = new ArrayList<>(List.of(CHECKIN_DONE_KEY + activityId,
+                CHECKIN_STATS_KEY + activityId, CHECKIN_RECENT_KEY + activityId));
+        List<String> args = new ArrayList<>();
+        args.add(registrationCheckinDTO.getPhone());
+        args.add(String.valueOf(checkinConfig.getMarkerTtl().toSeconds()));
+        addDashboardArgs(args, activityId);
+        if(pipelineConfig.isRedisStream()) {
+            keys.add(CHECKIN_STREAM_KEY);
+            args.addAll(StreamPipelineService.checkinFields(registrationCheckinDTO));
+        }
+        Long result = stringRedisTemplate.execute(CHECKIN_TOKEN_SCRIPT, keys, args.toArray());
+        return result == null || result != CHECKED_IN ? ALREADY_CHECKED_IN : CHECKED_IN;
+    }
+
+    /**
+     * 签到成功时脚本顺带更新签到统计、最近签到列表并广播，看板无需查询数据库
+     */
+    private void addDashboardArgs(List<String> args, Long activityId) {
+        args.add(activityId.toString());
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(CHECKIN_EVENT_CHANNEL);
+        args.add(String.valueOf(dashboardConfig.getRecentSize()));
+    }
+}
@@ -0,0 +1,418 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.CheckinConfig;
+import com.activity.manage.mapper.RegistrationMapper;
+import com.activity.manage.pojo.entity.Activity;
+import com.activity.manage.pojo.entity.Registration;
+import com.activity.manage.utils.RosterIndex;
+import com.activity.manage.utils.exception.BaseException;
+import com.activity.manage.utils.exception.OutOfBoundException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.activity.manage.utils.constant.RedisConstant.*;
+
+/**
+ * 签到名单
+ * 开放签到时先按报名先后为活动的报名记录分配连续序号，签到状态存放在以序号为偏移的位图 checkin:bitmap:{id} 中，
+ * 每人只占 1 位；已签到人数直接由 BITCOUNT 得到，未到场名单由扫描位图得到。
+ * 加载时用游标从数据库流式读取名单，每 rosterChunkSize 条通过一次管道写入已签到的位并记录进度；
+ * 全部写入后再由 checkinProcess.lua 一次性写入签到开放标记、统计和过期时间。
+ * 节点在加载中途宕机时开放标记尚未写入，下一次定时任务会从进度处继续，SETBIT 是幂等的，重复写入不影响结果。
+ * 开始加载时由 checkinOpen.lua 在同一个脚本内检查签到尚未开放、分片租约的防护令牌不落后于已开始加载的令牌，
+ * 并以 SET NX 取得名单加载锁，之后才会清理上一次签到残留的数据；签到已开放、令牌落后（租约已被接管的节点）
+ * 或其他线程正在加载时都不做任何修改，因此停顿后醒来的原持有者、与调度并行的兜底扫描都不会清掉进行中的签到。
+ * 写入开放标记时再次确认仍持有加载锁。
+ * 签到时手机号到序号的转换由本地缓存的名单索引完成，不访问数据库；名单在 ConcurrentHashMap 之外加载，
+ * 同一活动的并发请求等待同一个加载结果，不会阻塞其他活动。签到未开放的结果只短暂缓存，
+ * 任一实例开放签到后在 checkin:event 频道的 open 广播会清除各实例缓存的结果。
+ * 活动结束结算时按位图（动态签到码模式下按已签到者集合）批量补写数据库中的签到状态
+ */
+@Service
+@Slf4j
+public class CheckinRosterService implements MessageListener {
+
+    private static final String LAST_SEQ = "lastSeq";
+    private static final String OPEN = "open|";
+    /**
+     * 签到未开放时的缓存时长，避免反复查询
+     */
+    private static final long CLOSED_TTL = 5000;
+
+    @Autowired
+    private RegistrationMapper registrationMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private CheckinConfig checkinConfig;
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 开放签到的结果：签到已开放，或本节点的租约已被接管，未做任何修改
+     */
+    public static final long SKIPPED = -1;
+
+    private static final DefaultRedisScript<Long> CHECKIN_PROCESS_SCRIPT;
+    private static final DefaultRedisScript<Long> CHECKIN_OPEN_SCRIPT;
+    private static final DefaultRedisScript<Long> CHECKIN_OPEN_ABORT_SCRIPT;
+    static {
+        CHECKIN_PROCESS_SCRIPT = new DefaultRedisScript<>();
+        CHECKIN_PROCESS_SCRIPT.setLocation(new ClassPathResource("checkinProcess.lua"));
+        CHECKIN_PROCESS_SCRIPT.setResultType(Long.class);
+        CHECKIN_OPEN_SCRIPT = new DefaultRedisScript<>();
+        CHECKIN_OPEN_SCRIPT.setLocation(new ClassPathResource("checkinOpen.lua"));
+        CHECKIN_OPEN_SCRIPT.setResultType(Long.class);
+        CHECKIN_OPEN_ABORT_SCRIPT = new DefaultRedisScript<>();
+        CHECKIN_OPEN_ABORT_SCRIPT.setLocation(new ClassPathResource("checkinOpenAbort.lua"));
+        CHECKIN_OPEN_ABORT_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * @param index 名单索引，签到未开放时为 null
+     * @param expireAt 缓存失效的时间戳（毫秒）
+     */
+    private record Entry(RosterIndex index, long expireAt) {
+    }
+
+    private final ConcurrentHashMap<Long, CompletableFuture<Entry>> rosters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHECKIN_EVENT_CHANNEL));
+    }
+
+    /**
+     * 加载签到名单并开放签到
+     * @param activity
+     * @param duration 签到数据的过期时间，一般为距活动结束的时长
+     * @param fence 活动所属分片租约的防护令牌
+     * @return 应签到人数，为 0 时说明无人报名，签到未开放；签到已开放或令牌已落后时返回 SKIPPED
+     */
+    public long open(Activity activity, Duration duration, long fence) {
+        Long activityId = activity.getId();
+        String lockKey = CHECKIN_OPENING_KEY + activityId;
+        String owner = UUID.randomUUID().toString();
+        Long state = stringRedisTemplate.execute(CHECKIN_OPEN_SCRIPT,
+                List.of(CHECKIN_LOCATION_KEY + activityId, CHECKIN_FENCE_KEY + activityId, lockKey,
+                        CHECKIN_ROSTER_KEY + activityId, CHECKIN_BITMAP_KEY + activityId,
+                        CHECKIN_STATS_KEY + activityId, CHECKIN_RECENT_KEY + activityId),
+                String.valueOf(fence), owner, String.valueOf(checkinConfig.getRosterLockTtl().toMillis()),
+                String.valueOf(Math.max(1, duration.getSeconds())));
+        if (state == null) {
+            throw new BaseException("lua脚本执行失败");
+        }
+        if (state == 0 || state == -1) {
+            log.info("活动 {} 的签到已开放或租约令牌 {} 已落后，跳过加载", activityId, fence);
+            return SKIPPED;
+        }
+        if (state == -2) {
+            throw new BaseException("签到名单正在由其他线程加载");
+        }
+        try {
+            return load(activity, duration, state == 1, lockKey, owner);
+        } catch (RuntimeException e) {
+            stringRedisTemplate.execute(CHECKIN_OPEN_ABORT_SCRIPT, List.of(lockKey), owner);
+            throw e;
+        }
+    }
+
+    /**
+     * 持有加载锁时分批写入名单并写入签到开放标记
+     * @param fresh 是否全新加载，为 true 时先分配序号，否则从进度处继续
+     */
+    private long load(Activity activity, Duration duration, boolean fresh, String lockKey, String owner) {
+        Long activityId = activity.getId();
+        String bitmapKey = CHECKIN_BITMAP_KEY + activityId;
+        String progressKey = CHECKIN_ROSTER_KEY + activityId;
+
+        int lastSeq;
+        Object progress = fresh ? null : stringRedisTemplate.opsForHash().get(progressKey, LAST_SEQ);
+        if (progress == null) {
+            // 全新加载，上一次签到残留的数据已在脚本中清理，这里分配序号
+            registrationMapper.assignSeq(activityId);
+            lastSeq = -1;
+        } else {
+            lastSeq = Integer.parseInt(progress.toString());
+            log.info("活动 {} 的签到名单从序号 {} 之后继续加载", activityId, lastSeq);
+        }
+
+        int chunkSize = checkinConfig.getRosterChunkSize();
+        int rows = 0;
+        List<Integer> checked = new ArrayList<>();
+        // 游标在自动提交的独立会话中读取，不开启事务，写 Redis 期间不持有事务
+        try (SqlSession session = sqlSessionFactory.openSession(true);
+             Cursor<Registration> cursor = session.getMapper(RegistrationMapper.class).scanRoster(activityId, lastSeq)) {
+            for (Registration registration : cursor) {
+                lastSeq = registration.getSeq();
+                if (Integer.valueOf(1).equals(registration.getCheckin())) {
+                    checked.add(lastSeq);
+                }
+                if (++rows % chunkSize == 0) {
+                    flush(bitmapKey, progressKey, checked, lastSeq);
+                }
+            }
+        } catch (IOException e) {
+            throw new BaseException("读取签到名单失败");
+        }
+        if (rows % chunkSize != 0) {
+            flush(bitmapKey, progressKey, checked, lastSeq);
+        }
+
+        List<String> keys = List.of(bitmapKey, CHECKIN_LOCATION_KEY + activityId,
+                CHECKIN_STATS_KEY + activityId, CHECKIN_RECENT_KEY + activityId, progressKey, lockKey);
+        Long result = stringRedisTemplate.execute(
+                CHECKIN_PROCESS_SCRIPT,
+                keys,
+                activityId.toString(),
+                String.valueOf(duration.getSeconds()),
+                activity.getLatitude() != null ? activity.getLatitude().toString() : "0",
+                activity.getLongitude() != null ? activity.getLongitude().toString() : "0",
+                String.valueOf(activity.getCheckinRadius() != null
+                        ? activity.getCheckinRadius() : checkinConfig.getDefaultRadius()),
+                String.valueOf(lastSeq + 1),
+                owner
+        );
+        if (result != null && result == -2) {
+            throw new BaseException("名单加载锁已过期，稍后从进度处继续");
+        }
+        if (result == null || result < 0) {
+            throw new BaseException("lua脚本执行失败");
+        }
+        rosters.remove(activityId);
+        return result;
+    }
+
+    /**
+     * 获取签到中的活动的名单索引
+     * @param activityId
+     * @return 名单索引，签到未开放时返回 null
+     */
+    public RosterIndex index(Long activityId) {
+        long now = System.currentTimeMillis();
+        CompletableFuture<Entry> future = rosters.get(activityId);
+        if (future == null || stale(future, now)) {
+            // 同一活动只由放入新 future 的线程加载，其余线程等待同一个加载结果；加载在 map 之外进行
+            CompletableFuture<Entry> created = new CompletableFuture<>();
+            future = rosters.merge(activityId, created, (old, c) -> stale(old, now) ? c : old);
+            if (future == created) {
+                try {
+                    created.complete(load(activityId, now));
+                } catch (RuntimeException e) {
+                    rosters.remove(activityId, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try {
+            return future.join().index();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * 其他实例开放签到后清除本地缓存的结果，不必等未开放的缓存过期
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!body.startsWith(OPEN)) {
+            return;
+        }
+        // open|活动id|应签到人数
+        int end = body.indexOf('|', OPEN.length());
+        try {
+            rosters.remove(Long.valueOf(body.substring(OPEN.length(), end < 0 ? body.length() : end)));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析签到广播消息：{}", body);
+        }
+    }
+
+    /**
+     * 扫描签到位图得到未到场的报名者
+     * @param activityId
+     * @return 未签到的手机号
+     */
+    public List<String> absent(Long activityId) {
+        RosterIndex index = index(activityId);
+        if (index == null) {
+            throw new OutOfBoundException("签到时间");
+        }
+        byte[] key = (CHECKIN_BITMAP_KEY + activityId).getBytes(StandardCharsets.UTF_8);
+        byte[] bitmap = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key));
+        if (bitmap == null) {
+            bitmap = new byte[0];
+        }
+        List<String> phones = new ArrayList<>();
+        for (int seq = 0; seq < index.size(); seq++) {
+            if (isSet(bitmap, seq)) {
+                continue;
+            }
+            String phone = index.phone(seq);
+            if (phone != null) {
+                phones.add(phone);
+            }
+        }
+        return phones;
+    }
+
+    /**
+     * 按 Redis 中的签到记录批量补写数据库，异步写库的签到消息丢失时以此为准；已签到的记录不受影响，可以重复执行
+     * @param activityId
+     * @return 补写的记录数
+     */
+    public int reconcile(Long activityId) {
+        int chunkSize = checkinConfig.getRosterChunkSize();
+        int rows = 0;
+        byte[] key = (CHECKIN_BITMAP_KEY + activityId).getBytes(StandardCharsets.UTF_8);
+        byte[] bitmap = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key));
+        if (bitmap != null) {
+            List<Integer> seqs = new ArrayList<>();
+            for (int seq = 0; seq < bitmap.length * 8; seq++) {
+                if (isSet(bitmap, seq)) {
+                    seqs.add(seq);
+                }
+                if (seqs.size() == chunkSize) {
+                    rows += registrationMapper.checkinBySeq(activityId, seqs);
+                    seqs.clear();
+                }
+            }
+            if (!seqs.isEmpty()) {
+                rows += registrationMapper.checkinBySeq(activityId, seqs);
+            }
+        }
+        // 动态签到码模式下签到记录在已签到者集合中
+        Set<String> done = stringRedisTemplate.opsForSet().members(CHECKIN_DONE_KEY + activityId);
+        if (done != null && !done.isEmpty()) {
+            List<String> phones = new ArrayList<>(done);
+            for (int from = 0; from < phones.size(); from += chunkSize) {
+                rows += registrationMapper.checkinBatch(activityId,
+                        phones.subList(from, Math.min(from + chunkSize, phones.size())));
+            }
+        }
+        rosters.remove(activityId);
+        return rows;
+    }
+
+    /**
+     * 该活动签到相关的全部键
+     * @param activityId
+     * @return
+     */
+    public List<String> keys(Long activityId) {
+        return List.of(CHECKIN_BITMAP_KEY + activityId, CHECKIN_LOCATION_KEY + activityId,
+                CHECKIN_STATS_KEY + activityId, CHECKIN_RECENT_KEY + activityId,
+                CHECKIN_DONE_KEY + activityId, CHECKIN_ROSTER_KEY + activityId);
+    }
+
+    /**
+     * 位图中偏移 0 是第一个字节的最高位
+     */
+    private static boolean isSet(byte[] bitmap, int seq) {
+        int i = seq >>> 3;
+        return i < bitmap.length && (bitmap[i] & (0x80 >>> (seq & 7))) != 0;
+    }
+
+    /**
+     * 已过期或加载失败的缓存需要重新加载，加载中的不算
+     */
+    private static boolean stale(CompletableFuture<Entry> future, long now) {
+        if (!future.isDone()) {
+            return false;
+        }
+        if (future.isCompletedExceptionally()) {
+            return true;
+        }
+        return future.join().expireAt() < now;
+    }
+
+    /**
+     * 从数据库加载名单索引，缓存到签到数据过期为止
+     */
+    private Entry load(Long activityId, long now) {
+        Long ttl = stringRedisTemplate.getExpire(CHECKIN_LOCATION_KEY + activityId, TimeUnit.MILLISECONDS);
+        if (ttl == null || ttl <= 0) {
+            return new Entry(null, now + CLOSED_TTL);
+        }
+        long[][] phones = {new long[1024]};
+        int[][] seqs = {new int[1024]};
+        int[] count = {0};
+        int[] size = {0};
+        registrationMapper.loadRoster(activityId, context -> {
+            Registration registration = context.getResultObject();
+            long phone = RosterIndex.toLong(registration.getPhone());
+            if (phone < 0 || registration.getSeq() == null) {
+                return;
+            }
+            if (count[0] == phones[0].length) {
+                phones[0] = Arrays.copyOf(phones[0], count[0] * 2);
+                seqs[0] = Arrays.copyOf(seqs[0], count[0] * 2);
+            }
+            phones[0][count[0]] = phone;
+            seqs[0][count[0]] = registration.getSeq();
+            count[0]++;
+            size[0] = Math.max(size[0], registration.getSeq() + 1);
+        });
+        RosterIndex index = new RosterIndex(Arrays.copyOf(phones[0], count[0]),
+                Arrays.copyOf(seqs[0], count[0]), size[0]);
+        log.info("活动 {} 的签到名单已加载，共 {} 人", activityId, count[0]);
+        return new Entry(index, now + ttl);
+    }
+
+    /**
+     * 一次管道往返写入一批已签到的位并推进进度
+     */
+    private void flush(String bitmapKey, String progressKey, List<Integer> checked, int lastSeq) {
+        long ttl = checkinConfig.getRosterProgressTtl().getSeconds();
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for (Integer seq : checked) {
+                    operations.opsForValue().setBit(bitmapKey, seq, true);
+                }
+                operations.opsForHash().put(progressKey, LAST_SEQ, String.valueOf(lastSeq));
+                // 加载未完成的位图与进度一同过期，正式的过期时间在开放签到时写入
+                operations.expire(bitmapKey, Duration.ofSeconds(ttl));
+                operations.expire(progressKey, Duration.ofSeconds(ttl));
+                return null;
+            }
+        });
+        checked.clear();
+    }
+}
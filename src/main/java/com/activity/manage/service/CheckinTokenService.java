@@ -0,0 +1,127 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.CheckinConfig;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 动态签到码
+ * 与 TOTP 相同的思路：以 当前时间 / 轮换周期 为计数器，用活动密钥对 活动id:计数器 做 HMAC-SHA256，
+ * 截取前 12 字节作为签名，签到码形如 计数器.签名。活动密钥由主密钥对活动id做 HMAC 派生，无需存储；
+ * 校验只在本地计算，接受当前周期及前后 tokenSkew 个周期内的签到码
+ */
+@Service
+@Slf4j
+public class CheckinTokenService {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_BYTES = 12;
+    // Mac 不是线程安全的，按线程复用以省去每次查找算法实现的开销
+    private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    @Autowired
+    private CheckinConfig checkinConfig;
+
+    private final ConcurrentHashMap<Long, SecretKeySpec> activityKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 当前的签到码及剩余有效时间
+     * @param token 签到码
+     * @param expiresIn 距下次轮换的秒数
+     */
+    public record Token(String token, long expiresIn) {
+    }
+
+    @PostConstruct
+    public void check() {
+        if (checkinConfig.isTokenMode()
+                && (checkinConfig.getTokenSecret() == null || checkinConfig.getTokenSecret().isBlank())) {
+            throw new IllegalStateException("启用动态签到码时必须配置 manage.checkin.token-secret");
+        }
+    }
+
+    public boolean isEnabled() {
+        return checkinConfig.isTokenMode();
+    }
+
+    /**
+     * 生成活动当前周期的签到码
+     * @param activityId
+     * @return 签到码
+     */
+    public Token current(Long activityId) {
+        long period = checkinConfig.getTokenPeriod().toMillis();
+        long now = System.currentTimeMillis();
+        long counter = now / period;
+        String signature = Base64.getUrlEncoder().withoutPadding().encodeToString(sign(activityId, counter));
+        long expiresIn = ((counter + 1) * period - now + 999) / 1000;
+        return new Token(counter + "." + signature, expiresIn);
+    }
+
+    /**
+     * 校验签到码
+     * @param activityId
+     * @param token
+     * @return 签到码是否属于该活动且仍在有效期内
+     */
+    public boolean verify(Long activityId, String token) {
+        if (token == null) {
+            return false;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return false;
+        }
+        long counter;
+        byte[] signature;
+        try {
+            counter = Long.parseLong(token.substring(0, dot));
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        long current = System.currentTimeMillis() / checkinConfig.getTokenPeriod().toMillis();
+        if (Math.abs(current - counter) > checkinConfig.getTokenSkew()) {
+            return false;
+        }
+        return MessageDigest.isEqual(sign(activityId, counter), signature);
+    }
+
+    private byte[] sign(Long activityId, long counter) {
+        SecretKeySpec key = activityKeys.computeIfAbsent(activityId, this::deriveKey);
+        byte[] mac = hmac(key, (activityId + ":" + counter).getBytes(StandardCharsets.UTF_8));
+        return Arrays.copyOf(mac, SIGNATURE_BYTES);
+    }
+
+    private SecretKeySpec deriveKey(Long activityId) {
+        SecretKeySpec master = new SecretKeySpec(checkinConfig.getTokenSecret().getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        return new SecretKeySpec(hmac(master, ("checkin:" + activityId).getBytes(StandardCharsets.UTF_8)), ALGORITHM);
+    }
+
+    private static byte[] hmac(SecretKeySpec key, byte[] data) {
+        try {
+            Mac mac = MACS.get();
+            mac.init(key);
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.CheckinConfig;
+import com.activity.manage.mapper.ActivityMapper;
+import com.activity.manage.pojo.entity.Activity;
+import com.activity.manage.pojo.entity.Geofence;
+import com.activity.manage.utils.GeofenceIndex;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.activity.manage.utils.constant.RedisConstant.CHECKIN_GEOFENCE_CHANNEL;
+
+/**
+ * 活动签到范围的本地缓存
+ * 签到开放时由定时任务预先加载，其他实例在第一次签到时从数据库加载；缓存到活动结束为止，
+ * 活动修改后通过 Redis 发布/订阅通知所有实例丢弃缓存。签到时的几何判断完全在本地完成
+ */
+@Service
+@Slf4j
+public class GeofenceService implements MessageListener {
+
+    /**
+     * 签到时间窗口外或活动不存在时的缓存时长，避免反复查询数据库
+     */
+    private static final long CLOSED_TTL = 5000;
+
+    @Autowired
+    private ActivityMapper activityMapper;
+    @Autowired
+    private CheckinConfig checkinConfig;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * @param index 签到范围索引，签到未开放时为 null
+     * @param expireAt 缓存失效的时间戳（毫秒）
+     */
+    private record Entry(GeofenceIndex index, long expireAt) {
+    }
+
+    private final ConcurrentHashMap<Long, Entry> geofences = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHECKIN_GEOFENCE_CHANNEL));
+    }
+
+    /**
+     * 加载活动的签到范围
+     * @param activity
+     */
+    public void load(Activity activity) {
+        geofences.put(activity.getId(), build(activity));
+    }
+
+    /**
+     * 获取签到中的活动的签到范围
+     * @param activityId
+     * @return 签到范围索引，活动不存在或不在签到时间内时返回 null
+     */
+    public GeofenceIndex get(Long activityId) {
+        Entry entry = geofences.get(activityId);
+        if (entry == null || entry.expireAt() < System.currentTimeMillis()) {
+            Activity activity = activityMapper.selectById(activityId);
+            entry = activity != null ? build(activity) : new Entry(null, System.currentTimeMillis() + CLOSED_TTL);
+            geofences.put(activityId, entry);
+        }
+        return entry.index();
+    }
+
+    /**
+     * 活动的位置或签到范围发生变化，丢弃所有实例中的缓存
+     * @param activityId
+     */
+    public void evict(Long activityId) {
+        geofences.remove(activityId);
+        stringRedisTemplate.convertAndSend(CHECKIN_GEOFENCE_CHANNEL, activityId.toString());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            geofences.remove(Long.valueOf(body));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析签到范围广播消息：{}", body);
+        }
+    }
+
+    private Entry build(Activity activity) {
+        long now = System.currentTimeMillis();
+        LocalDateTime start = activity.getActivityStart();
+        LocalDateTime end = activity.getActivityEnd();
+        if (start == null || end == null || toMillis(start) > now || toMillis(end) < now) {
+            // 签到尚未开始时缓存到开始为止，避免开始后仍拒绝签到
+            long expireAt = start != null && toMillis(start) > now
+                    ? Math.min(toMillis(start), now + CLOSED_TTL) : now + CLOSED_TTL;
+            return new Entry(null, expireAt);
+        }
+        int defaultRadius = activity.getCheckinRadius() != null
+                ? activity.getCheckinRadius() : checkinConfig.getDefaultRadius();
+        List<double[]> anchors = new ArrayList<>();
+        List<double[]> polygon = new ArrayList<>();
+        Geofence geofence = activity.getGeofence();
+        if (geofence != null && geofence.getAnchors() != null) {
+            for (Geofence.Anchor anchor : geofence.getAnchors()) {
+                if (anchor.getLatitude() == null || anchor.getLongitude() == null) {
+                    continue;
+                }
+                anchors.add(new double[]{anchor.getLatitude(), anchor.getLongitude(),
+                        anchor.getRadius() != null ? anchor.getRadius() : defaultRadius});
+            }
+        }
+        if (geofence != null && geofence.getPolygon() != null && geofence.getPolygon().size() >= 3) {
+            for (Geofence.Vertex vertex : geofence.getPolygon()) {
+                if (vertex.getLatitude() != null && vertex.getLongitude() != null) {
+                    polygon.add(new double[]{vertex.getLatitude(), vertex.getLongitude()});
+                }
+            }
+        }
+        // 未配置签到范围时，以活动坐标为唯一签到点
+        if (anchors.isEmpty() && polygon.size() < 3 && activity.getLatitude() != null && activity.getLongitude() != null) {
+            polygon.clear();
+            anchors.add(new double[]{activity.getLatitude().doubleValue(), activity.getLongitude().doubleValue(),
+                    defaultRadius});
+        }
+        if (anchors.isEmpty() && polygon.size() < 3) {
+            log.warn("活动 {} 没有可用的签到范围", activity.getId());
+            return new Entry(null, now + CLOSED_TTL);
+        }
+        return new Entry(new GeofenceIndex(anchors, polygon), toMillis(end));
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
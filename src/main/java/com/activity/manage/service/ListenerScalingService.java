@@ -0,0 +1,203 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.CheckinBatchConfig;
+import com.activity.manage.config.ListenerScalingConfig;
+import com.activity.manage.config.RegistrationBatchConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.activity.manage.utils.constant.RabbitMQConstant.CHECKIN_QUEUE;
+
+/**
+ * 监听器消费者数与预取数的自适应调整
+ * 定期采集三个信号：队列积压（RabbitMQ队列消息数）、监听方法平均耗时（spring.rabbitmq.listener 计时器）、
+ * 数据库连接平均获取等待（hikaricp.connections.acquire 计时器），按加性增、乘性减调整：
+ * 下游过载时消费者数和预取数减半，积压超过消费者承载量时消费者数加一、预取数翻倍，队列清空后逐步回落到下限。
+ * 每次调整都记录为指标，当前消费者数与预取数以 Gauge 导出
+ */
+@Slf4j
+@Service
+public class ListenerScalingService {
+
+    private static final String LISTENER_TIMER = "spring.rabbitmq.listener";
+    private static final String DB_ACQUIRE_TIMER = "hikaricp.connections.acquire";
+
+    @Autowired
+    private ListenerScalingConfig listenerScalingConfig;
+    @Autowired
+    private RegistrationBatchConfig registrationBatchConfig;
+    @Autowired
+    private CheckinBatchConfig checkinBatchConfig;
+    @Autowired
+    private RabbitListenerEndpointRegistry rabbitListenerEndpointRegistry;
+    @Autowired
+    private RabbitAdmin rabbitAdmin;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final Sample dbWait = new Sample();
+
+    /**
+     * 单个监听器的当前设定与上一轮的计时器读数
+     */
+    private static class State {
+        volatile int concurrency;
+        volatile int prefetch;
+        final Sample processing = new Sample();
+    }
+
+    /**
+     * 计时器累计值的差分，得到本轮区间内的平均耗时
+     */
+    private static class Sample {
+        long count;
+        double totalMillis;
+
+        double meanMillis(long newCount, double newTotalMillis) {
+            long calls = newCount - count;
+            double mean = calls > 0 ? (newTotalMillis - totalMillis) / calls : 0;
+            count = newCount;
+            totalMillis = newTotalMillis;
+            return mean;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${manage.listener-scaling.interval:5s}")
+    public void adjust() {
+        if (!listenerScalingConfig.isEnabled()) {
+            return;
+        }
+        double dbWaitMillis = meanMillis(meterRegistry.find(DB_ACQUIRE_TIMER).timers(), dbWait);
+        for (MessageListenerContainer container : rabbitListenerEndpointRegistry.getListenerContainers()) {
+            if (!(container instanceof SimpleMessageListenerContainer simple) || !simple.isRunning()) {
+                continue;
+            }
+            try {
+                adjust(simple, dbWaitMillis);
+            } catch (Exception e) {
+                log.warn("调整监听器 {} 失败：{}", simple.getListenerId(), e.getMessage());
+            }
+        }
+    }
+
+    private void adjust(SimpleMessageListenerContainer container, double dbWaitMillis) {
+        String listenerId = container.getListenerId();
+        State state = states.computeIfAbsent(listenerId, id -> register(id, container));
+
+        long backlog = 0;
+        for (String queue : container.getQueueNames()) {
+            backlog += queueDepth(queue);
+        }
+        double processingMillis = meanMillis(
+                meterRegistry.find(LISTENER_TIMER).tag("listener.id", listenerId).timers(), state.processing);
+
+        int minPrefetch = container.isConsumerBatchEnabled()
+                ? Math.max(listenerScalingConfig.getMinPrefetch(), batchSize(container))
+                : listenerScalingConfig.getMinPrefetch();
+        int concurrency = state.concurrency;
+        int prefetch = state.prefetch;
+        String direction;
+        if (dbWaitMillis > listenerScalingConfig.getMaxDbWait().toMillis()
+                || processingMillis > listenerScalingConfig.getMaxProcessingTime().toMillis()) {
+            // 数据库或监听方法已经变慢，再加消费者只会加剧争用
+            concurrency = Math.max(listenerScalingConfig.getMinConcurrency(), concurrency / 2);
+            prefetch = Math.max(minPrefetch, prefetch / 2);
+            direction = "down";
+        } else if (backlog > (long) concurrency * listenerScalingConfig.getBacklogPerConsumer()) {
+            concurrency = Math.min(listenerScalingConfig.getMaxConcurrency(), concurrency + 1);
+            prefetch = Math.min(listenerScalingConfig.getMaxPrefetch(), prefetch * 2);
+            direction = "up";
+        } else if (backlog == 0) {
+            concurrency = Math.max(listenerScalingConfig.getMinConcurrency(), concurrency - 1);
+            prefetch = Math.max(minPrefetch, Math.min(prefetch, listenerScalingConfig.getInitialPrefetch()));
+            direction = "idle";
+        } else {
+            direction = "hold";
+        }
+        prefetch = Math.max(prefetch, minPrefetch);
+
+        if (concurrency == state.concurrency && prefetch == state.prefetch) {
+            return;
+        }
+        // 预取数只对之后新建的消费者生效，消费者数变化时容器会按新的预取数创建消费者
+        container.setPrefetchCount(prefetch);
+        if (concurrency > state.concurrency) {
+            container.setMaxConcurrentConsumers(concurrency);
+            container.setConcurrentConsumers(concurrency);
+        } else if (concurrency < state.concurrency) {
+            container.setConcurrentConsumers(concurrency);
+            container.setMaxConcurrentConsumers(concurrency);
+        }
+        state.concurrency = concurrency;
+        state.prefetch = prefetch;
+        Counter.builder("manage.listener.scaling.decisions")
+                .description("监听器自适应调整次数")
+                .tag("listener", listenerId)
+                .tag("direction", direction)
+                .register(meterRegistry)
+                .increment();
+        log.info("监听器 {} 调整为 消费者 {} 预取 {}（积压 {}，处理耗时 {}ms，连接等待 {}ms）",
+                listenerId, concurrency, prefetch, backlog,
+                Math.round(processingMillis), Math.round(dbWaitMillis));
+    }
+
+    private State register(String listenerId, SimpleMessageListenerContainer container) {
+        State state = new State();
+        state.concurrency = listenerScalingConfig.getMinConcurrency();
+        state.prefetch = container.isConsumerBatchEnabled()
+                ? Math.max(listenerScalingConfig.getInitialPrefetch(), batchSize(container))
+                : listenerScalingConfig.getInitialPrefetch();
+        Gauge.builder("manage.listener.concurrency", state, s -> s.concurrency)
+                .description("监听器当前消费者数")
+                .tag("listener", listenerId)
+                .register(meterRegistry);
+        Gauge.builder("manage.listener.prefetch", state, s -> s.prefetch)
+                .description("监听器当前预取数")
+                .tag("listener", listenerId)
+                .register(meterRegistry);
+        return state;
+    }
+
+    private int batchSize(SimpleMessageListenerContainer container) {
+        return Arrays.asList(container.getQueueNames()).contains(CHECKIN_QUEUE)
+                ? checkinBatchConfig.getBatchSize()
+                : registrationBatchConfig.getBatchSize();
+    }
+
+    private long queueDepth(String queue) {
+        Properties properties = rabbitAdmin.getQueueProperties(queue);
+        if (properties == null) {
+            return 0;
+        }
+        Object count = properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT);
+        return count == null ? 0 : ((Number) count).longValue();
+    }
+
+    private static double meanMillis(Collection<Timer> timers, Sample sample) {
+        long count = 0;
+        double total = 0;
+        for (Timer timer : timers) {
+            count += timer.count();
+            total += timer.totalTime(TimeUnit.MILLISECONDS);
+        }
+        return sample.meanMillis(count, total);
+    }
+}
@@ -0,0 +1,69 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.PipelineConfig;
+import com.activity.manage.pojo.dto.RegistrationCheckinDTO;
+import com.activity.manage.pojo.dto.RegistrationDTO;
+import com.activity.manage.utils.AsyncBatchingRabbitTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import static com.activity.manage.utils.constant.RabbitMQConstant.CHECKIN_QUEUE;
+
+/**
+ * 报名与签到消息的发送入口
+ * 使用Redis Stream流水线时，报名与签到事件已由各自的Lua脚本写入Stream；
+ * 使用RabbitMQ时，报名消息按活动ID选定分区队列，报名与签到消息在启用发件箱时写入发件箱，其余情况下启用合批发送时交给合批的RabbitTemplate，否则直接发送
+ */
+@Service
+@Slf4j
+public class MessagePublishService {
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+    @Autowired(required = false)
+    private AsyncBatchingRabbitTemplate batchingRabbitTemplate;
+    @Autowired
+    private OutboxService outboxService;
+    @Autowired
+    private PipelineConfig pipelineConfig;
+    @Autowired
+    private RegistrationPartitionService registrationPartitionService;
+
+    /**
+     * 发送报名消息，异步写入数据库
+     * @param registrationDTO
+     */
+    public void publishRegistration(RegistrationDTO registrationDTO) {
+        if(pipelineConfig.isRedisStream()) {
+            return;
+        }
+        String queue = registrationPartitionService.queueFor(registrationDTO.getActivityId());
+        if(outboxService.isEnabled()) {
+            outboxService.append(queue, registrationDTO);
+            return;
+        }
+        send(queue, registrationDTO);
+    }
+
+    /**
+     * 发送签到消息，异步写入数据库
+     * @param registrationCheckinDTO
+     */
+    public void publishCheckin(RegistrationCheckinDTO registrationCheckinDTO) {
+        if(pipelineConfig.isRedisStream()) {
+            return;
+        }
+        if(outboxService.isEnabled()) {
+            outboxService.append(CHECKIN_QUEUE, registrationCheckinDTO);
+            return;
+        }
+        send(CHECKIN_QUEUE, registrationCheckinDTO);
+    }
+
+    private void send(String queue, Object payload) {
+        RabbitTemplate template = batchingRabbitTemplate != null ? batchingRabbitTemplate : rabbitTemplate;
+        template.convertAndSend(queue, payload);
+    }
+}
@@ -0,0 +1,161 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.OutboxConfig;
+import com.activity.manage.config.PipelineConfig;
+import com.activity.manage.utils.MappedOutbox;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 报名消息发件箱
+ * 启用后，请求线程只把消息追加到本地内存映射文件中即返回，由后台线程按批投递到RabbitMQ，
+ * 等待RabbitMQ确认后再推进确认位置；进程重启后从确认位置重新投递，
+ * 保证Redis中已扣减的名额最终都能写入数据库（至少一次投递）
+ */
+@Service
+@Slf4j
+public class OutboxService {
+
+    private static final String TYPE_ID_HEADER = "__TypeId__";
+
+    @Autowired
+    private OutboxConfig outboxConfig;
+    @Autowired
+    private PipelineConfig pipelineConfig;
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private Jackson2JsonMessageConverter jsonMessageConverter;
+
+    private MappedOutbox outbox;
+    private Thread relay;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() throws IOException {
+        // 使用Redis Stream流水线时不经过RabbitMQ，无需发件箱
+        if(!outboxConfig.isEnabled() || !pipelineConfig.isRabbitmq()) {
+            return;
+        }
+        outbox = new MappedOutbox(Path.of(outboxConfig.getDir()),
+                (int) outboxConfig.getSegmentSize().toBytes(),
+                outboxConfig.isForce());
+        running = true;
+        relay = new Thread(this::relayLoop, "outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if(relay != null) {
+            relay.interrupt();
+            relay.join(outboxConfig.getConfirmTimeout().toMillis());
+        }
+        if(outbox != null) {
+            outbox.close();
+        }
+    }
+
+    /**
+     * 是否启用了发件箱
+     * @return
+     */
+    public boolean isEnabled() {
+        return outbox != null;
+    }
+
+    /**
+     * 将发往队列的消息写入本地发件箱，由后台线程投递
+     * @param queue
+     * @param payload
+     */
+    public void append(String queue, Object payload) {
+        Message message = jsonMessageConverter.toMessage(payload, new MessageProperties());
+        outbox.append(encode(queue, message));
+    }
+
+    /**
+     * 尚未确认投递的字节数
+     * @return
+     */
+    public long backlog() {
+        return outbox == null ? 0 : outbox.getWriteOffset() - outbox.getCommittedOffset();
+    }
+
+    private void relayLoop() {
+        while (running) {
+            try {
+                List<MappedOutbox.Entry> entries = outbox.read(outbox.getCommittedOffset(), outboxConfig.getRelayBatchSize());
+                if(entries.isEmpty()) {
+                    Thread.sleep(outboxConfig.getPollInterval().toMillis());
+                    continue;
+                }
+                // 使用带确认的信道整批发送，全部确认后再提交
+                rabbitTemplate.invoke(operations -> {
+                    for (MappedOutbox.Entry entry : entries) {
+                        ByteBuffer buffer = ByteBuffer.wrap(entry.payload());
+                        String queue = readString(buffer);
+                        String typeId = readString(buffer);
+                        byte[] body = new byte[buffer.remaining()];
+                        buffer.get(body);
+                        MessageProperties properties = new MessageProperties();
+                        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+                        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+                        properties.setHeader(TYPE_ID_HEADER, typeId);
+                        operations.send(queue, new Message(body, properties));
+                    }
+                    operations.waitForConfirmsOrDie(outboxConfig.getConfirmTimeout().toMillis());
+                    return null;
+                });
+                outbox.commit(entries.getLast().nextOffset());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("发件箱投递失败，{} 毫秒后重试：{}", outboxConfig.getRetryInterval().toMillis(), e.getMessage());
+                try {
+                    Thread.sleep(outboxConfig.getRetryInterval().toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录格式：[队列名长度 short][队列名][类型长度 short][类型][消息体]
+     */
+    private static byte[] encode(String queue, Message message) {
+        byte[] queueBytes = queue.getBytes(StandardCharsets.UTF_8);
+        Object typeId = message.getMessageProperties().getHeader(TYPE_ID_HEADER);
+        byte[] typeBytes = String.valueOf(typeId).getBytes(StandardCharsets.UTF_8);
+        byte[] body = message.getBody();
+        ByteBuffer buffer = ByteBuffer.allocate(Short.BYTES * 2 + queueBytes.length + typeBytes.length + body.length);
+        buffer.putShort((short) queueBytes.length).put(queueBytes);
+        buffer.putShort((short) typeBytes.length).put(typeBytes);
+        buffer.put(body);
+        return buffer.array();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,87 @@
+package com.activity.manage.service;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static com.activity.manage.utils.constant.RabbitMQConstant.*;
+
+/**
+ * 停车场队列管理
+ * 重试次数用完的消息停留在停车场队列中，排除故障后由管理员批量回放到原队列
+ */
+@Slf4j
+@Service
+public class ParkingLotService {
+
+    private static final long CONFIRM_TIMEOUT = 5000;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private RabbitAdmin rabbitAdmin;
+
+    /**
+     * 查询停车场中的消息条数
+     * @return 消息条数
+     */
+    public long size() {
+        Properties properties = rabbitAdmin.getQueueProperties(PARKING_QUEUE);
+        if (properties == null) {
+            return 0;
+        }
+        Object count = properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT);
+        return count == null ? 0 : ((Number) count).longValue();
+    }
+
+    /**
+     * 把停车场中的消息回放到各自的原队列
+     * 逐条取出后重新发布，发布成功才确认，中途失败的消息仍留在停车场；
+     * 回放时清空重试次数，消息重新拥有完整的重试机会
+     * @param limit 本次最多回放的条数
+     * @return 实际回放的条数
+     */
+    public int replay(int limit) {
+        Integer replayed = rabbitTemplate.execute(channel -> {
+            int count = 0;
+            while (count < limit) {
+                GetResponse response = channel.basicGet(PARKING_QUEUE, false);
+                if (response == null) {
+                    break;
+                }
+                long tag = response.getEnvelope().getDeliveryTag();
+                AMQP.BasicProperties props = response.getProps();
+                Map<String, Object> headers = props.getHeaders() == null
+                        ? new HashMap<>() : new HashMap<>(props.getHeaders());
+                Object queue = headers.get(ORIGINAL_QUEUE_HEADER);
+                if (queue == null) {
+                    // 来源不明的消息无法回放，放回停车场并结束本次回放，避免反复取到同一条
+                    channel.basicNack(tag, false, true);
+                    log.warn("停车场消息缺少原队列信息，停止回放");
+                    break;
+                }
+                headers.remove(RETRY_COUNT_HEADER);
+                headers.remove(EXCEPTION_HEADER);
+                headers.remove("x-death");
+                channel.basicPublish("", queue.toString(), props.builder().headers(headers).build(), response.getBody());
+                if (channel.getNextPublishSeqNo() > 0) {
+                    // 通道处于发布确认模式时，确认发布成功后再从停车场移除
+                    channel.waitForConfirmsOrDie(CONFIRM_TIMEOUT);
+                }
+                channel.basicAck(tag, false);
+                count++;
+            }
+            return count;
+        });
+        log.info("停车场回放 {} 条消息", replayed);
+        return replayed == null ? 0 : replayed;
+    }
+}
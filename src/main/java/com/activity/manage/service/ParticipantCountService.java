@@ -0,0 +1,73 @@
+package com.activity.manage.service;
+
+import com.activity.manage.mapper.ActivityMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 活动报名人数聚合器
+ * 报名记录的增删只在内存中累加各活动的人数变化量，由定时任务按周期合并为一条
+ * UPDATE ... CASE 写回 activity 表，使 activity 表的写入次数与活动数相关，而与报名数无关。
+ * 变化量只在内存中，节点宕机时会丢失；活动结束结算时按报名记录重新统计（见 ActivityMapper.settleBatch）加以纠正
+ */
+@Service
+@Slf4j
+public class ParticipantCountService {
+
+    @Autowired
+    private ActivityMapper activityMapper;
+
+    /**
+     * 活动id -> 尚未写回数据库的人数变化量
+     */
+    private final ConcurrentHashMap<Long, Long> deltas = new ConcurrentHashMap<>();
+
+    /**
+     * 累加某活动的报名人数变化量
+     * @param activityId
+     * @param delta 新增报名为正，取消报名为负
+     */
+    public void add(Long activityId, long delta) {
+        if(activityId == null || delta == 0)
+            return;
+        deltas.merge(activityId, delta, Long::sum);
+    }
+
+    /**
+     * 定时将累积的变化量写回数据库
+     */
+    @Scheduled(fixedDelayString = "${manage.participant-count.flush-interval:1000}")
+    public void flush() {
+        if(deltas.isEmpty())
+            return;
+        Map<Long, Long> batch = new HashMap<>();
+        for (Long activityId : deltas.keySet()) {
+            // 逐个取出并移除，取出后新到的变化量会进入下一轮
+            Long delta = deltas.remove(activityId);
+            if(delta != null && delta != 0)
+                batch.put(activityId, delta);
+        }
+        if(batch.isEmpty())
+            return;
+        try {
+            activityMapper.updateParticipantsBatch(batch);
+            log.debug("已写回 {} 个活动的报名人数变化", batch.size());
+        } catch (Exception e) {
+            // 写回失败则放回，下一轮重试
+            batch.forEach(this::add);
+            log.error("写回报名人数失败，将在下一轮重试：{}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+}
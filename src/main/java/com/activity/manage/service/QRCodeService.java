@@ -40,6 +40,26 @@ public class QRCodeService {
                 .body(qrCodeBytes);
     }
 
+    /**
+     * 生成会轮换的二维码图片，禁止缓存，并通过 Refresh 头告知页面何时重新拉取
+     *
+     * @param content 二维码内容字符串
+     * @param width 二维码图片宽度
+     * @param height 二维码图片高度
+     * @param expiresIn 二维码内容失效前的秒数
+     * @return 包含二维码图片字节数据的响应实体，类型为PNG图片
+     * @throws WriterException 二维码生成过程中出现编码错误时抛出
+     * @throws IOException 图片处理过程中出现IO异常时抛出
+     */
+    public ResponseEntity<byte[]> generateRotatingQRCode(String content, int width, int height, long expiresIn) throws WriterException, IOException {
+        byte[] qrCodeBytes = qrCodeUtil.generateQRCodeBytes(content, width, height);
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_PNG)
+                .header("Cache-Control", "no-store")
+                .header("Refresh", String.valueOf(Math.max(expiresIn, 1)))
+                .body(qrCodeBytes);
+    }
+
     /**
      * 生成带URL的二维码图片并上传到阿里云OSS
      *
@@ -0,0 +1,221 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.PartitionConfig;
+import com.activity.manage.config.PipelineConfig;
+import com.activity.manage.config.RegistrationBatchConfig;
+import com.activity.manage.pojo.dto.RegistrationDTO;
+import com.activity.manage.utils.ConsistentHashRing;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static com.activity.manage.utils.constant.RabbitMQConstant.REGISTRATION_PARTITION_SEPARATOR;
+import static com.activity.manage.utils.constant.RabbitMQConstant.REGISTRATION_QUEUE;
+import static com.activity.manage.utils.constant.RedisConstant.REGISTRATION_PARTITION_NODES_KEY;
+
+/**
+ * 报名队列分区
+ * 报名消息按活动ID在一致性哈希环上选定分区队列，同一活动的消息始终进入同一分区，热门活动只占用自己的分区，
+ * 不会拖慢其他活动的写库。每个分区队列开启 single-active-consumer，全集群同一时刻只有一个消费者在消费，保证活动内顺序。
+ * 各节点定期向Redis写入心跳，按最高随机权重（rendezvous）哈希在存活节点间分配分区，节点加入或下线时只迁移少量分区
+ */
+@Slf4j
+@Service
+public class RegistrationPartitionService {
+
+    @Autowired
+    private PartitionConfig partitionConfig;
+    @Autowired
+    private PipelineConfig pipelineConfig;
+    @Autowired
+    private RegistrationBatchConfig registrationBatchConfig;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    @Qualifier("rabbitListenerContainerFactory")
+    private SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory;
+    @Autowired
+    @Qualifier("batchRabbitListenerContainerFactory")
+    private SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory;
+    @Autowired
+    private MessageConverter jsonMessageConverter;
+    @Autowired
+    private RegistrationService registrationService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ConsistentHashRing<Integer> ring;
+    private final Map<Integer, SimpleMessageListenerContainer> containers = new ConcurrentHashMap<>();
+    private ThreadPoolTaskScheduler scheduler;
+    private String nodeId;
+
+    @PostConstruct
+    public void start() {
+        if (!isPartitioned()) {
+            return;
+        }
+        ring = new ConsistentHashRing<>(IntStream.range(0, partitionConfig.getCount()).boxed().toList(),
+                partitionConfig.getVirtualNodes());
+        if (!pipelineConfig.isRabbitmq()) {
+            return;
+        }
+        nodeId = resolveNodeId();
+        Gauge.builder("manage.partition.owned", containers, Map::size)
+                .description("本节点正在消费的报名分区数")
+                .register(meterRegistry);
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("registration-partition-");
+        scheduler.setPoolSize(1);
+        scheduler.initialize();
+        scheduler.scheduleWithFixedDelay(this::rebalance, partitionConfig.getHeartbeatInterval());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        containers.keySet().forEach(this::release);
+        // 主动摘除心跳，其余节点在下一轮即可接管分区，无需等到心跳过期
+        stringRedisTemplate.opsForZSet().remove(REGISTRATION_PARTITION_NODES_KEY, nodeId);
+    }
+
+    public boolean isPartitioned() {
+        return partitionConfig.getCount() > 1;
+    }
+
+    /**
+     * 选定活动的报名消息应进入的队列
+     * @param activityId
+     * @return 分区队列名，未分区时为报名队列
+     */
+    public String queueFor(Long activityId) {
+        if (!isPartitioned()) {
+            return REGISTRATION_QUEUE;
+        }
+        return queueName(ring.get(activityId));
+    }
+
+    /**
+     * @param partition
+     * @return 分区对应的队列名
+     */
+    public static String queueName(int partition) {
+        return REGISTRATION_QUEUE + REGISTRATION_PARTITION_SEPARATOR + partition;
+    }
+
+    /**
+     * 写心跳、清理过期节点，并按存活节点重新计算本节点负责的分区
+     */
+    void rebalance() {
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().add(REGISTRATION_PARTITION_NODES_KEY, nodeId, now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(REGISTRATION_PARTITION_NODES_KEY,
+                    0, now - partitionConfig.getNodeTtl().toMillis());
+            Set<String> nodes = stringRedisTemplate.opsForZSet().range(REGISTRATION_PARTITION_NODES_KEY, 0, -1);
+            if (nodes == null || nodes.isEmpty()) {
+                return;
+            }
+            for (int partition = 0; partition < partitionConfig.getCount(); partition++) {
+                boolean owned = nodeId.equals(owner(partition, nodes));
+                if (owned && !containers.containsKey(partition)) {
+                    acquire(partition);
+                } else if (!owned && containers.containsKey(partition)) {
+                    release(partition);
+                }
+            }
+        } catch (Exception e) {
+            // Redis 暂不可用时保持现有分配，已启动的分区继续消费
+            log.warn("报名分区重新分配失败：{}", e.getMessage());
+        }
+    }
+
+    private static String owner(int partition, Set<String> nodes) {
+        String owner = null;
+        int best = Integer.MIN_VALUE;
+        for (String node : nodes) {
+            int weight = ConsistentHashRing.hash(node + "@" + partition);
+            if (owner == null || weight > best || (weight == best && node.compareTo(owner) < 0)) {
+                owner = node;
+                best = weight;
+            }
+        }
+        return owner;
+    }
+
+    private void acquire(int partition) {
+        boolean batch = registrationBatchConfig.isEnabled();
+        SimpleMessageListenerContainer container = batch
+                ? batchRabbitListenerContainerFactory.createListenerContainer()
+                : rabbitListenerContainerFactory.createListenerContainer();
+        container.setQueueNames(queueName(partition));
+        // 每个分区只有一个消费者，保证同一活动的报名按入队顺序写库
+        container.setConcurrentConsumers(1);
+        container.setMaxConcurrentConsumers(1);
+        container.setMessageListener(new PartitionListener());
+        container.afterPropertiesSet();
+        container.start();
+        containers.put(partition, container);
+        log.info("节点 {} 开始消费报名分区 {}", nodeId, partition);
+    }
+
+    private void release(int partition) {
+        SimpleMessageListenerContainer container = containers.remove(partition);
+        if (container == null) {
+            return;
+        }
+        container.stop();
+        container.destroy();
+        log.info("节点 {} 停止消费报名分区 {}", nodeId, partition);
+    }
+
+    private static String resolveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + ":" + ManagementFactory.getRuntimeMXBean().getPid();
+    }
+
+    /**
+     * 分区消费者，单条与批量消费都转换为 RegistrationDTO 后批量写库
+     */
+    private class PartitionListener implements BatchMessageListener {
+
+        @Override
+        public void onMessage(Message message) {
+            onMessageBatch(List.of(message));
+        }
+
+        @Override
+        public void onMessageBatch(List<Message> messages) {
+            List<RegistrationDTO> registrationDTOList = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                registrationDTOList.add((RegistrationDTO) jsonMessageConverter.fromMessage(message));
+            }
+            registrationService.saveRegistrations(registrationDTOList);
+        }
+    }
+}
@@ -16,14 +16,13 @@ import com.activity.manage.utils.exception.OutOfBoundException;
 import com.activity.manage.utils.result.Result;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.geo.Point;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -31,7 +30,10 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static cn.hutool.core.bean.BeanUtil.copyProperties;
 import static com.activity.manage.utils.constant.RabbitMQConstant.CHECKIN_QUEUE;
@@ -48,112 +50,205 @@ public class RegistrationService {
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
     @Autowired
-    private RabbitTemplate rabbitTemplate;
+    private ParticipantCountService participantCountService;
     @Autowired
-    private static final DefaultRedisScript<Long> REGISTRATION_SCRIPT;
-    static {
-        REGISTRATION_SCRIPT = new DefaultRedisScript<>();
-        REGISTRATION_SCRIPT.setLocation(new ClassPathResource("registration.lua"));
-        REGISTRATION_SCRIPT.setResultType(Long.class);
-    }
+    private SeatInventoryService seatInventoryService;
+    @Autowired
+    private SoldOutService soldOutService;
+    @Autowired
+    private MessagePublishService messagePublishService;
+    @Autowired
+    private CheckinGateService checkinGateService;
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     @Transactional
     public Result registration(RegistrationDTO registrationDTO) {
         Long activityId = registrationDTO.getActivityId();
         String phone = registrationDTO.getPhone();
-        // 执行Lua脚本，查看返回的结果
-        Long result = stringRedisTemplate.execute(
-                REGISTRATION_SCRIPT,
-                Collections.emptyList(),
-                activityId.toString(),
-                phone
-        );
-        switch (result.intValue()) {
-            case 1 -> {
+        // 本地已标记名额已满的活动直接拒绝，不再访问Redis
+        if(soldOutService.isSoldOut(activityId)) {
+            throw new BaseException("名额不足");
+        }
+        // 执行Lua脚本扣减名额，查看返回的结果
+        int result = seatInventoryService.reserve(activityId, phone,
+                StreamPipelineService.registrationFields(registrationDTO));
+        switch (result) {
+            case SeatInventoryService.NOT_OPEN -> {
                 throw new OutOfBoundException("报名时间");
             }
-            case 2 -> {
+            case SeatInventoryService.SOLD_OUT -> {
+                soldOutService.markSoldOut(activityId);
                 throw new BaseException("名额不足");
             }
-            case 3 -> {
+            case SeatInventoryService.DUPLICATE -> {
                 throw new BaseException("不能再次报名");
             }
             default -> {
                 // 报名成功，返回正确结果，再放入RabbitMQ，异步写入数据库
-                stringRedisTemplate.opsForSet().add(REGISTRATION_REGISTRATOR_KEY + activityId, phone);
-                rabbitTemplate.convertAndSend(REGISTRATION_QUEUE, registrationDTO);
+                messagePublishService.publishRegistration(registrationDTO);
                 return Result.success();
             }
         }
     }
 
+    /**
+     * 查询活动剩余名额
+     * @param activityId
+     * @return
+     */
+    public Result<Long> remainingSeats(Long activityId) {
+        Long remaining = seatInventoryService.remaining(activityId);
+        if(remaining == null) {
+            throw new OutOfBoundException("报名时间");
+        }
+        return Result.success(remaining);
+    }
+
     /**
      * 若RabbitMQ中报名队列存在数据，则拉取并存进数据库里
+     * 仅在使用RabbitMQ流水线且关闭批量消费模式时启动
      * @param registrationDTO
      */
-    @RabbitListener(queues = REGISTRATION_QUEUE)
+    @RabbitListener(id = "registration", queues = REGISTRATION_QUEUE,
+            autoStartup = "#{@pipelineConfig.rabbitmq and !@registrationBatchConfig.enabled}")
     public void doRegistration(RegistrationDTO registrationDTO) {
         if(registrationDTO == null)
             throw new NullParamException();
+        participantCountService.add(registrationDTO.getActivityId(),
+                registrationMapper.insert(toRegistration(registrationDTO)));
+    }
+
+    /**
+     * 批量消费报名队列，整批消息以一条多行 INSERT 写入数据库，方法返回后整批确认
+     * @param registrationDTOList
+     */
+    @RabbitListener(id = "registrationBatch", queues = REGISTRATION_QUEUE,
+            containerFactory = "batchRabbitListenerContainerFactory",
+            autoStartup = "#{@pipelineConfig.rabbitmq and @registrationBatchConfig.enabled}")
+    public void doRegistrationBatch(List<RegistrationDTO> registrationDTOList) {
+        saveRegistrations(registrationDTOList);
+    }
+
+    /**
+     * 批量写入报名记录
+     * 按活动分组，每组一条多行 INSERT ... ON DUPLICATE KEY UPDATE，重复投递的记录不做修改，
+     * 按实际插入的行数累加报名人数。多行插入仍然失败时（如数据不合法）退回逐条插入，
+     * 不合法的记录直接跳过，其余异常（如数据库连接异常）继续抛出，使整批消息重新投递
+     * @param registrationDTOList
+     */
+    public void saveRegistrations(List<RegistrationDTO> registrationDTOList) {
+        if(registrationDTOList == null || registrationDTOList.isEmpty())
+            return;
+        Map<Long, List<Registration>> registrationMap = registrationDTOList.stream()
+                .filter(Objects::nonNull)
+                .map(this::toRegistration)
+                .collect(Collectors.groupingBy(Registration::getActivityId));
+        registrationMap.forEach((activityId, registrations) -> {
+            try {
+                participantCountService.add(activityId, registrationMapper.insertBatch(registrations));
+                return;
+            } catch (DataIntegrityViolationException e) {
+                log.warn("批量写入 {} 条报名记录失败，改为逐条写入：{}", registrations.size(), e.getMessage());
+            }
+            for (Registration registration : registrations) {
+                try {
+                    participantCountService.add(activityId, registrationMapper.insert(registration));
+                } catch (DataIntegrityViolationException e) {
+                    log.error("报名记录不合法，丢弃：activityId={}, phone={}，原因：{}",
+                            activityId, registration.getPhone(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    private Registration toRegistration(RegistrationDTO registrationDTO) {
         Registration registration = copyProperties(registrationDTO, Registration.class);
         registration.setRegistrationTime(LocalDateTime.now());
         registration.setCheckin(0);
-        registrationMapper.insert(registration);
+        return registration;
     }
 
-    @Transactional
     public Result checkinConfirm(RegistrationCheckinDTO registrationCheckinDTO) {
-        Long activityId = registrationCheckinDTO.getActivityId();
-        String key = CHECKIN_USER_KEY + activityId.toString();
-        String locationKey = CHECKIN_LOCATION_KEY + activityId;
-        String phone = registrationCheckinDTO.getPhone();
-        Boolean isMember = stringRedisTemplate.opsForSet().isMember(key, phone);
-        if(isMember == null || !isMember) {
-            throw new BaseException("请进入正确的活动页面中");
-        }
-
-        // 获取坐标信息进行匹配
-        double latitude = registrationCheckinDTO.getLatitude().doubleValue();
-        double longitude = registrationCheckinDTO.getLongitude().doubleValue();
-        Point point = new Point(longitude, latitude);
-        stringRedisTemplate.opsForGeo().add(locationKey, point, "temp");
-        Double distance;
-        try {
-            distance = Objects.requireNonNull(stringRedisTemplate.opsForGeo()
-                            .distance(locationKey, activityId.toString(), "temp"))
-                    .getValue();
-        } catch (Exception e) {
-            throw new OutOfBoundException("活动时间");
-        }
-
-        if (distance == null) {
-            throw new OutOfBoundException("活动时间");
+        if(registrationCheckinDTO.getLatitude() == null || registrationCheckinDTO.getLongitude() == null) {
+            throw new NullParamException();
         }
-        
-        if (distance > 0.1) {
-            throw new OutOfBoundException("签到范围");
+        // 执行Lua脚本，一次完成资格校验、距离校验与移出待签到集合
+        int result = checkinGateService.checkin(registrationCheckinDTO);
+        switch (result) {
+            case CheckinGateService.NOT_OPEN -> {
+                throw new OutOfBoundException("活动时间");
+            }
+            case CheckinGateService.NOT_REGISTERED -> {
+                throw new BaseException("请进入正确的活动页面中");
+            }
+            case CheckinGateService.OUT_OF_RANGE -> {
+                throw new OutOfBoundException("签到范围");
+            }
+            case CheckinGateService.INVALID_TOKEN -> {
+                throw new BaseException("签到码已失效，请重新扫码");
+            }
+            case CheckinGateService.ALREADY_CHECKED_IN -> {
+                throw new BaseException("不能重复签到");
+            }
+            default -> {
+                // 签到成功，将签到信息发送到对应队列，异步处理
+                messagePublishService.publishCheckin(registrationCheckinDTO);
+                return Result.success();
+            }
         }
-        stringRedisTemplate.opsForGeo().remove(locationKey, "temp");
-        stringRedisTemplate.opsForSet().remove(key, phone);
-        // 将签到信息发送到对应队列，异步处理
-        rabbitTemplate.convertAndSend(CHECKIN_QUEUE, registrationCheckinDTO);
-        return Result.success();
     }
 
     /**
      * 消费队列，执行数据库更新
      * @param registrationCheckinDTO
      */
-    @RabbitListener(queues = CHECKIN_QUEUE)
+    @RabbitListener(id = "checkin", queues = CHECKIN_QUEUE,
+            autoStartup = "#{@pipelineConfig.rabbitmq and !@checkinBatchConfig.enabled}")
     public void doCheckin(RegistrationCheckinDTO registrationCheckinDTO) {
         if(registrationCheckinDTO == null)
             throw new NullParamException();
-        Integer checkinStatus = registrationMapper.isCheckin(
-                registrationCheckinDTO.getActivityId(),
-                registrationCheckinDTO.getPhone());
+        saveCheckin(registrationCheckinDTO);
+    }
 
-        if(checkinStatus != null && checkinStatus == 1)
-            return;
+    /**
+     * 批量消费签到队列，整批写入数据库后一次确认
+     * @param registrationCheckinDTOList
+     */
+    @RabbitListener(id = "checkinBatch", queues = CHECKIN_QUEUE,
+            containerFactory = "checkinBatchRabbitListenerContainerFactory",
+            autoStartup = "#{@pipelineConfig.rabbitmq and @checkinBatchConfig.enabled}")
+    public void doCheckinBatch(List<RegistrationCheckinDTO> registrationCheckinDTOList) {
+        saveCheckins(registrationCheckinDTOList);
+    }
+
+    /**
+     * 批量写入签到状态，同一活动的签到合并为一条 phone in (...) 的条件更新
+     * @param registrationCheckinDTOList
+     * @return 状态发生变化的行数，重复投递或已签到的记录不计入
+     */
+    public int saveCheckins(List<RegistrationCheckinDTO> registrationCheckinDTOList) {
+        if(registrationCheckinDTOList == null || registrationCheckinDTOList.isEmpty())
+            return 0;
+        Map<Long, Set<String>> phoneMap = registrationCheckinDTOList.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(RegistrationCheckinDTO::getActivityId,
+                        Collectors.mapping(RegistrationCheckinDTO::getPhone, Collectors.toSet())));
+        int updated = 0;
+        for (Map.Entry<Long, Set<String>> entry : phoneMap.entrySet()) {
+            updated += registrationMapper.checkinBatch(entry.getKey(), entry.getValue());
+        }
+        DistributionSummary.builder("manage.checkin.batch.updated")
+                .description("每批签到消息实际更新的行数")
+                .register(meterRegistry)
+                .record(updated);
+        log.info("签到批次 {} 条消息，涉及 {} 个活动，更新 {} 行",
+                registrationCheckinDTOList.size(), phoneMap.size(), updated);
+        return updated;
+    }
+
+    private void saveCheckin(RegistrationCheckinDTO registrationCheckinDTO) {
+        // 条件更新只修改未签到的记录，重复投递时影响行数为 0
         Registration registration = BeanUtil.copyProperties(registrationCheckinDTO, Registration.class);
         registrationMapper.checkin(registration);
     }
@@ -175,8 +270,10 @@ public class RegistrationService {
         List<Activity> activityList = activityMapper.selectByIdBatch(activityIds);
         List<Activity2RegisterVO> activity2RegisterVOList = new ArrayList<>();
         if(activityList != null) {
+            LocalDateTime now = LocalDateTime.now();
             for (Activity activity : activityList) {
                 Activity2RegisterVO a = copyProperties(activity, Activity2RegisterVO.class);
+                a.setStatus(ActivityService.deriveStatus(activity, now));
                 activity2RegisterVOList.add(a);
             }
         } else {
@@ -194,8 +291,12 @@ public class RegistrationService {
     public Result registrationDelete(RegistrationDeleteDTO registrationDeleteDTO) {
         Long activityId = registrationDeleteDTO.getActivityId();
         String phone = registrationDeleteDTO.getPhone();
-        stringRedisTemplate.opsForSet().remove(REGISTRATION_REGISTRATOR_KEY + activityId, phone);
-        registrationMapper.delete(activityId, phone);
+        if(seatInventoryService.release(activityId, phone)) {
+            soldOutService.clear(activityId);
+        }
+        if(registrationMapper.delete(activityId, phone) > 0) {
+            participantCountService.add(activityId, -1);
+        }
         return Result.success();
     }
 }
@@ -0,0 +1,440 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.InventoryConfig;
+import com.activity.manage.config.PipelineConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.activity.manage.utils.constant.RedisConstant.REGISTRATION_ACTIVITY_KEY;
+import static com.activity.manage.utils.constant.RedisConstant.REGISTRATION_REGISTRATOR_KEY;
+import static com.activity.manage.utils.constant.RedisConstant.REGISTRATION_SHARDS_KEY;
+import static com.activity.manage.utils.constant.RedisConstant.REGISTRATION_STREAM_KEY;
+import static com.activity.manage.utils.constant.RedisConstant.REGISTRATION_TRANSFER_KEY;
+import static com.activity.manage.utils.constant.RedisConstant.REGISTRATION_TRANSFER_PENDING_KEY;
+
+/**
+ * 报名名额库存
+ * 分片数为 1 时使用 registration:activity:{id} 与 registration:registrator:{id} 两个键；
+ * 分片数为 K 时名额拆分到 K 个子计数器和 K 个报名者子集合，按手机号哈希选择分片，分散单个热点键上的竞争。
+ * 每个分片使用各自的哈希标签 {id:i}，分片的计数键、报名者集合与转移记录在同一个哈希槽，不同分片落在不同的哈希槽。
+ * 某个分片名额耗尽时从剩余名额最多的分片借一半过来再重试，借用分两步：先在借出分片扣减并记下转移记录，
+ * 再在借入分片按转移id去重后转入，最后删除转移记录；借用方在两步之间宕机时，由对账任务按记录补做第二步。
+ * 转移途中的名额暂时不计入剩余名额，不会多卖。
+ * 活动的分片数在开放报名时记录在 registration:shards:{id} 中，之后修改配置不影响已开放的活动；
+ * 本地缓存的分片数定期过期，活动结算或删除时立即清除
+ */
+@Service
+@Slf4j
+public class SeatInventoryService {
+
+    /**
+     * 报名结果：成功
+     */
+    public static final int RESERVED = 0;
+    /**
+     * 报名结果：不在报名时间内
+     */
+    public static final int NOT_OPEN = 1;
+    /**
+     * 报名结果：名额不足
+     */
+    public static final int SOLD_OUT = 2;
+    /**
+     * 报名结果：重复报名
+     */
+    public static final int DUPLICATE = 3;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private InventoryConfig inventoryConfig;
+    @Autowired
+    private PipelineConfig pipelineConfig;
+
+    /**
+     * 本地缓存分片数的时长
+     */
+    private static final long SHARDS_TTL = 600_000;
+    /**
+     * 借入分片已过期时转入标记的保留时长
+     */
+    private static final Duration TRANSFER_MARKER_TTL = Duration.ofHours(1);
+
+    /**
+     * @param shards 活动初始化时记录的分片数
+     * @param expireAt 缓存失效的时间戳（毫秒）
+     */
+    private record Entry(int shards, long expireAt) {
+    }
+
+    /**
+     * 活动id -> 该活动的分片数
+     */
+    private final ConcurrentHashMap<Long, Entry> activityShards = new ConcurrentHashMap<>();
+
+    private static final DefaultRedisScript<Long> REGISTRATION_SCRIPT;
+    private static final DefaultRedisScript<Long> CANCEL_SCRIPT;
+    private static final DefaultRedisScript<Long> TRANSFER_OUT_SCRIPT;
+    private static final DefaultRedisScript<Long> TRANSFER_IN_SCRIPT;
+    static {
+        REGISTRATION_SCRIPT = new DefaultRedisScript<>();
+        REGISTRATION_SCRIPT.setLocation(new ClassPathResource("registration.lua"));
+        REGISTRATION_SCRIPT.setResultType(Long.class);
+        CANCEL_SCRIPT = new DefaultRedisScript<>();
+        CANCEL_SCRIPT.setLocation(new ClassPathResource("registrationCancel.lua"));
+        CANCEL_SCRIPT.setResultType(Long.class);
+        TRANSFER_OUT_SCRIPT = new DefaultRedisScript<>();
+        TRANSFER_OUT_SCRIPT.setLocation(new ClassPathResource("registrationTransferOut.lua"));
+        TRANSFER_OUT_SCRIPT.setResultType(Long.class);
+        TRANSFER_IN_SCRIPT = new DefaultRedisScript<>();
+        TRANSFER_IN_SCRIPT.setLocation(new ClassPathResource("registrationTransferIn.lua"));
+        TRANSFER_IN_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 开放报名时初始化名额，活动的分片数在首次初始化时确定
+     * @param activityId
+     * @param seats 总名额
+     * @param ttl 过期时间，一般为距报名结束的时长
+     */
+    public void init(Long activityId, int seats, Duration ttl) {
+        initAll(Map.of(activityId, seats), Map.of(activityId, ttl));
+    }
+
+    /**
+     * 批量开放报名，所有活动的名额在一次管道往返内以 SET NX 写入，已初始化的活动保持不变。
+     * 已记录分片数的活动沿用记录的分片数，其余活动按当前配置的分片数初始化并记录下来
+     * @param seats 活动id -> 总名额
+     * @param ttls 活动id -> 过期时间
+     */
+    public void initAll(Map<Long, Integer> seats, Map<Long, Duration> ttls) {
+        List<Long> activityIds = new ArrayList<>(seats.keySet());
+        List<String> recorded = stringRedisTemplate.opsForValue().multiGet(
+                activityIds.stream().map(id -> REGISTRATION_SHARDS_KEY + id).toList());
+        int configured = shards();
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for (int n = 0; n < activityIds.size(); n++) {
+                    Long activityId = activityIds.get(n);
+                    String value = recorded != null ? recorded.get(n) : null;
+                    int shards = value != null ? Integer.parseInt(value) : configured;
+                    // 分片数不设过期时间，与报名者集合一同保留到活动结算
+                    operations.opsForValue().setIfAbsent(REGISTRATION_SHARDS_KEY + activityId, String.valueOf(shards));
+                    long[] parts = split(seats.get(activityId), shards);
+                    for (int i = 0; i < shards; i++) {
+                        operations.opsForValue().setIfAbsent(counterKey(activityId, i, shards),
+                                String.valueOf(parts[i]), ttls.get(activityId));
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 名额是否已初始化（即是否已开放报名）
+     * @param activityId
+     * @return
+     */
+    public boolean isInitialized(Long activityId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(counterKey(activityId, 0, shards(activityId))));
+    }
+
+    /**
+     * 尝试为用户预留一个名额
+     * 使用Redis Stream流水线时，报名成功的同时在脚本内把报名事件追加到报名事件流
+     * @param activityId
+     * @param phone
+     * @param event 报名事件的字段名与字段值
+     * @return RESERVED、NOT_OPEN、SOLD_OUT 或 DUPLICATE
+     */
+    public int reserve(Long activityId, String phone, List<String> event) {
+        int shards = shards(activityId);
+        int shard = shardOf(phone, shards);
+        List<String> keys = new ArrayList<>(List.of(counterKey(activityId, shard, shards),
+                registratorKey(activityId, shard, shards)));
+        List<String> args = new ArrayList<>();
+        args.add(phone);
+        if(pipelineConfig.isRedisStream()) {
+            keys.add(REGISTRATION_STREAM_KEY);
+            args.addAll(event);
+        }
+        int result = execute(REGISTRATION_SCRIPT, keys, args);
+        // 本分片名额耗尽时向其他分片借名额，借到后重试，直到所有分片都耗尽
+        while (result == SOLD_OUT && shards > 1 && borrow(activityId, shard, shards) > 0) {
+            result = execute(REGISTRATION_SCRIPT, keys, args);
+        }
+        return result;
+    }
+
+    /**
+     * 取消报名，将用户移出报名者集合；若用户确实已报名且报名仍在进行，则归还名额
+     * @param activityId
+     * @param phone
+     * @return 是否归还了名额
+     */
+    public boolean release(Long activityId, String phone) {
+        int shards = shards(activityId);
+        int shard = shardOf(phone, shards);
+        List<String> keys = List.of(counterKey(activityId, shard, shards), registratorKey(activityId, shard, shards));
+        return execute(CANCEL_SCRIPT, keys, List.of(phone)) == 1;
+    }
+
+    /**
+     * 调整总名额（活动最大报名人数被修改时使用），已报名人数保持不变
+     * @param activityId
+     * @param delta 名额变化量
+     * @param ttl 新的过期时间
+     */
+    public void adjust(Long activityId, int delta, Duration ttl) {
+        int shards = shards(activityId);
+        long[] parts = split(delta, shards);
+        for (int i = 0; i < shards; i++) {
+            String key = counterKey(activityId, i, shards);
+            if(parts[i] != 0) {
+                stringRedisTemplate.opsForValue().increment(key, parts[i]);
+            }
+            stringRedisTemplate.expire(key, ttl);
+        }
+    }
+
+    /**
+     * 汇总所有分片的剩余名额
+     * @param activityId
+     * @return 剩余名额，未开放报名时返回 null
+     */
+    public Long remaining(Long activityId) {
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(counterKeys(activityId, shards(activityId)));
+        if(values == null || values.isEmpty() || values.getFirst() == null) {
+            return null;
+        }
+        long sum = 0;
+        for (String value : values) {
+            if(value != null) {
+                sum += Math.max(0, Long.parseLong(value));
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 该活动名额相关的全部键
+     * @param activityId
+     * @return
+     */
+    public List<String> keys(Long activityId) {
+        int shards = shards(activityId);
+        List<String> keys = new ArrayList<>(counterKeys(activityId, shards));
+        for (int i = 0; i < shards; i++) {
+            keys.add(registratorKey(activityId, i, shards));
+            if(shards > 1) {
+                keys.add(transferKey(activityId, i));
+            }
+        }
+        keys.add(REGISTRATION_SHARDS_KEY + activityId);
+        return keys;
+    }
+
+    /**
+     * 活动结算或删除时清除本地缓存的分片数和待对账标记，需在 keys 取得名额键之后调用
+     * @param activityId
+     */
+    public void evict(Long activityId) {
+        activityShards.remove(activityId);
+        stringRedisTemplate.opsForSet().remove(REGISTRATION_TRANSFER_PENDING_KEY, activityId.toString());
+    }
+
+    /**
+     * 补做借用方未完成的名额转移，并清理过期的本地缓存
+     * 转移记录超过 transferTimeout 仍未删除时按记录转入借入分片，转入按转移id去重，多个节点同时对账也不会重复转入
+     */
+    @Scheduled(fixedDelayString = "${manage.inventory.transfer-check-interval:5s}")
+    public void reconcileTransfers() {
+        long now = System.currentTimeMillis();
+        activityShards.values().removeIf(entry -> entry.expireAt() < now);
+        Set<String> pending = stringRedisTemplate.opsForSet().members(REGISTRATION_TRANSFER_PENDING_KEY);
+        if(pending == null) {
+            return;
+        }
+        for (String id : pending) {
+            Long activityId = Long.valueOf(id);
+            try {
+                if(!reconcileTransfers(activityId, now)) {
+                    stringRedisTemplate.opsForSet().remove(REGISTRATION_TRANSFER_PENDING_KEY, id);
+                }
+            } catch (Exception e) {
+                log.warn("活动 {} 的名额转移对账失败：{}", activityId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return 活动是否仍在报名中，需要继续对账
+     */
+    private boolean reconcileTransfers(Long activityId, long now) {
+        int shards = shards(activityId);
+        if(shards == 1) {
+            return false;
+        }
+        long timeout = inventoryConfig.getTransferTimeout().toMillis();
+        for (int donor = 0; donor < shards; donor++) {
+            Map<Object, Object> records = stringRedisTemplate.opsForHash().entries(transferKey(activityId, donor));
+            for (Map.Entry<Object, Object> record : records.entrySet()) {
+                String field = record.getKey().toString();
+                if(!field.startsWith("out:")) {
+                    continue;
+                }
+                // 借入分片|数量|时间戳
+                String[] parts = record.getValue().toString().split("\\|");
+                if(now - Long.parseLong(parts[2]) < timeout) {
+                    continue;
+                }
+                String transferId = field.substring("out:".length());
+                transferIn(activityId, Integer.parseInt(parts[0]), shards, transferId, Long.parseLong(parts[1]));
+                stringRedisTemplate.opsForHash().delete(transferKey(activityId, donor), field);
+                log.warn("活动 {} 补做了分片 {} 到分片 {} 的名额转移 {}，数量 {}",
+                        activityId, donor, parts[0], transferId, parts[1]);
+            }
+        }
+        return isInitialized(activityId);
+    }
+
+    /**
+     * 从剩余名额最多的分片借一半名额到指定分片
+     * @return 借到的名额数，其余分片都耗尽时返回 0
+     */
+    private long borrow(Long activityId, int shard, int shards) {
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(counterKeys(activityId, shards));
+        if(values == null) {
+            return 0;
+        }
+        // 按剩余名额从多到少尝试，读取后其他请求可能已经借走，借出时以脚本内的数量为准
+        List<Integer> donors = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            if(i != shard && values.get(i) != null && Long.parseLong(values.get(i)) > 0) {
+                donors.add(i);
+            }
+        }
+        donors.sort(Comparator.comparingLong((Integer i) -> Long.parseLong(values.get(i))).reversed());
+        if(donors.isEmpty()) {
+            return 0;
+        }
+        // 先登记待对账的活动，借用方在两步之间宕机时对账任务才能找到转移记录
+        stringRedisTemplate.opsForSet().add(REGISTRATION_TRANSFER_PENDING_KEY, activityId.toString());
+        for (int donor : donors) {
+            String transferId = UUID.randomUUID().toString();
+            Long taken = stringRedisTemplate.execute(TRANSFER_OUT_SCRIPT,
+                    List.of(counterKey(activityId, donor, shards), transferKey(activityId, donor)),
+                    transferId, String.valueOf(shard), String.valueOf(System.currentTimeMillis()));
+            if(taken == null || taken <= 0) {
+                continue;
+            }
+            transferIn(activityId, shard, shards, transferId, taken);
+            stringRedisTemplate.opsForHash().delete(transferKey(activityId, donor), "out:" + transferId);
+            log.debug("活动 {} 分片 {} 从分片 {} 借得 {} 个名额", activityId, shard, donor, taken);
+            return taken;
+        }
+        return 0;
+    }
+
+    private void transferIn(Long activityId, int shard, int shards, String transferId, long amount) {
+        stringRedisTemplate.execute(TRANSFER_IN_SCRIPT,
+                List.of(counterKey(activityId, shard, shards), transferKey(activityId, shard)),
+                transferId, String.valueOf(amount), String.valueOf(TRANSFER_MARKER_TTL.getSeconds()));
+    }
+
+    private int execute(DefaultRedisScript<Long> script, List<String> keys, List<String> args) {
+        Long result = stringRedisTemplate.execute(script, keys, args.toArray());
+        return result == null ? NOT_OPEN : result.intValue();
+    }
+
+    private List<String> counterKeys(Long activityId, int shards) {
+        List<String> keys = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            keys.add(counterKey(activityId, i, shards));
+        }
+        return keys;
+    }
+
+    private static String counterKey(Long activityId, int shard, int shards) {
+        return shards == 1
+                ? REGISTRATION_ACTIVITY_KEY + activityId
+                : REGISTRATION_ACTIVITY_KEY + tag(activityId, shard);
+    }
+
+    private static String registratorKey(Long activityId, int shard, int shards) {
+        return shards == 1
+                ? REGISTRATION_REGISTRATOR_KEY + activityId
+                : REGISTRATION_REGISTRATOR_KEY + tag(activityId, shard);
+    }
+
+    private static String transferKey(Long activityId, int shard) {
+        return REGISTRATION_TRANSFER_KEY + tag(activityId, shard);
+    }
+
+    /**
+     * 分片的哈希标签，同一分片的键在同一个哈希槽，不同分片分散到不同的哈希槽
+     */
+    private static String tag(Long activityId, int shard) {
+        return "{" + activityId + ":" + shard + "}";
+    }
+
+    /**
+     * 活动初始化时记录的分片数，分片数在活动的整个生命周期内不变，记录后缓存在本地；
+     * 尚未开放报名的活动按当前配置计算
+     */
+    private int shards(Long activityId) {
+        long now = System.currentTimeMillis();
+        Entry cached = activityShards.get(activityId);
+        if(cached != null && cached.expireAt() >= now) {
+            return cached.shards();
+        }
+        String value = stringRedisTemplate.opsForValue().get(REGISTRATION_SHARDS_KEY + activityId);
+        if(value == null) {
+            return shards();
+        }
+        int shards = Integer.parseInt(value);
+        activityShards.put(activityId, new Entry(shards, now + SHARDS_TTL));
+        return shards;
+    }
+
+    private int shards() {
+        return Math.max(1, inventoryConfig.getShards());
+    }
+
+    private static int shardOf(String phone, int shards) {
+        return Math.floorMod(phone.hashCode(), shards);
+    }
+
+    /**
+     * 将总量尽量均匀地拆分到各分片，余数分给前几个分片
+     */
+    private static long[] split(long total, int shards) {
+        long[] parts = new long[shards];
+        long base = total / shards;
+        long rest = total % shards;
+        for (int i = 0; i < shards; i++) {
+            parts[i] = base + (i < Math.abs(rest) ? Long.signum(rest) : 0);
+        }
+        return parts;
+    }
+}
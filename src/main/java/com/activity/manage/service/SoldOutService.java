@@ -0,0 +1,105 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.InventoryConfig;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.activity.manage.utils.constant.RedisConstant.REGISTRATION_SOLD_OUT_CHANNEL;
+
+/**
+ * 活动名额已满的本地标记
+ * 名额耗尽后，后续报名请求直接在本实例内拒绝，不再执行 Redis 脚本；
+ * 标记的设置与清除通过 Redis 发布/订阅同步到其他实例，
+ * 标记本身带有效期，即使丢失了清除广播也只会短暂地误拒
+ */
+@Service
+@Slf4j
+public class SoldOutService implements MessageListener {
+
+    private static final String SET = "set:";
+    private static final String CLEAR = "clear:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private InventoryConfig inventoryConfig;
+
+    /**
+     * 活动id -> 标记失效的时间戳（毫秒）
+     */
+    private final ConcurrentHashMap<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(REGISTRATION_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * 活动名额是否已满
+     * @param activityId
+     * @return
+     */
+    public boolean isSoldOut(Long activityId) {
+        Long expireAt = soldOut.get(activityId);
+        if(expireAt == null) {
+            return false;
+        }
+        if(expireAt < System.currentTimeMillis()) {
+            soldOut.remove(activityId, expireAt);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 标记活动名额已满，并通知其他实例
+     * @param activityId
+     */
+    public void markSoldOut(Long activityId) {
+        // 已经标记过的不再重复广播
+        if(isSoldOut(activityId)) {
+            return;
+        }
+        mark(activityId);
+        stringRedisTemplate.convertAndSend(REGISTRATION_SOLD_OUT_CHANNEL, SET + activityId);
+    }
+
+    /**
+     * 活动重新有了名额，清除标记并通知其他实例
+     * @param activityId
+     */
+    public void clear(Long activityId) {
+        soldOut.remove(activityId);
+        stringRedisTemplate.convertAndSend(REGISTRATION_SOLD_OUT_CHANNEL, CLEAR + activityId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            if(body.startsWith(SET)) {
+                mark(Long.valueOf(body.substring(SET.length())));
+            } else if(body.startsWith(CLEAR)) {
+                soldOut.remove(Long.valueOf(body.substring(CLEAR.length())));
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无法解析名额广播消息：{}", body);
+        }
+    }
+
+    private void mark(Long activityId) {
+        soldOut.put(activityId, System.currentTimeMillis() + inventoryConfig.getSoldOutTtl().toMillis());
+    }
+}
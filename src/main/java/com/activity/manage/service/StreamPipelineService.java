@@ -0,0 +1,312 @@
+package com.activity.manage.service;
+
+import com.activity.manage.config.PipelineConfig;
+import com.activity.manage.pojo.dto.RegistrationCheckinDTO;
+import com.activity.manage.pojo.dto.RegistrationDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.activity.manage.utils.constant.RedisConstant.*;
+
+/**
+ * 基于Redis Stream的写库流水线（不依赖RabbitMQ的部署模式）
+ * 报名与签到事件由Lua脚本或签到流程追加到Stream中，本服务以消费组的方式批量读取并写入数据库，
+ * 写库成功后再 XACK 并删除对应条目；写库失败的条目留在待确认列表中，之后重新处理，保证至少一次写入。
+ * 整批写库因数据问题失败时逐条重试，确认能写入的条目；投递次数达到上限的条目连同失败原因移入死信Stream（原key加 :dead），
+ * 避免一条无法写入的事件反复阻塞整个Stream。数据库不可用这类暂时性错误不计入逐条重试，只等待后重试整批。
+ * 由于已确认的条目会被删除，Stream的长度即为尚未写入数据库的积压量
+ */
+@Service
+@Slf4j
+public class StreamPipelineService {
+
+    @Autowired
+    private PipelineConfig pipelineConfig;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RegistrationService registrationService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final String consumerName = ManagementFactory.getRuntimeMXBean().getName();
+    private final List<Thread> flushers = new ArrayList<>();
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if(!pipelineConfig.isRedisStream()) {
+            return;
+        }
+        running = true;
+        startFlusher(REGISTRATION_STREAM_KEY, records ->
+                registrationService.saveRegistrations(records.stream().map(StreamPipelineService::toRegistration).toList()));
+        startFlusher(CHECKIN_STREAM_KEY, records ->
+                registrationService.saveCheckins(records.stream().map(StreamPipelineService::toCheckin).toList()));
+        log.info("写库流水线使用 Redis Stream，消费者：{}", consumerName);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread flusher : flushers) {
+            flusher.interrupt();
+            flusher.join(pipelineConfig.getStreamBlock().toMillis() * 2);
+        }
+    }
+
+    /**
+     * 报名事件在Stream中的字段，依次为字段名与字段值
+     * @param registrationDTO
+     * @return
+     */
+    public static List<String> registrationFields(RegistrationDTO registrationDTO) {
+        return List.of(
+                "activityId", String.valueOf(registrationDTO.getActivityId()),
+                "registrationName", nullToEmpty(registrationDTO.getRegistrationName()),
+                "college", nullToEmpty(registrationDTO.getCollege()),
+                "phone", registrationDTO.getPhone()
+        );
+    }
+
+    /**
+     * 签到事件在Stream中的字段，依次为字段名与字段值
+     * @param registrationCheckinDTO
+     * @return
+     */
+    public static List<String> checkinFields(RegistrationCheckinDTO registrationCheckinDTO) {
+        return List.of(
+                "activityId", String.valueOf(registrationCheckinDTO.getActivityId()),
+                "phone", registrationCheckinDTO.getPhone(),
+                "latitude", String.valueOf(registrationCheckinDTO.getLatitude()),
+                "longitude", String.valueOf(registrationCheckinDTO.getLongitude())
+        );
+    }
+
+    private void startFlusher(String key, java.util.function.Consumer<List<MapRecord<String, Object, Object>>> handler) {
+        try {
+            stringRedisTemplate.opsForStream().createGroup(key, ReadOffset.from("0"), STREAM_GROUP);
+        } catch (Exception e) {
+            // 消费组已存在
+            log.debug("消费组 {} 已存在于 {}", STREAM_GROUP, key);
+        }
+        Gauge.builder("manage.pipeline.stream.lag", () -> {
+                    Long size = stringRedisTemplate.opsForStream().size(key);
+                    return size == null ? 0 : size;
+                })
+                .description("Stream中尚未写入数据库的事件数")
+                .tag("stream", key)
+                .register(meterRegistry);
+        Thread flusher = new Thread(() -> flushLoop(key, handler), "stream-flusher-" + key);
+        flusher.setDaemon(true);
+        flusher.start();
+        flushers.add(flusher);
+    }
+
+    private void flushLoop(String key, java.util.function.Consumer<List<MapRecord<String, Object, Object>>> handler) {
+        Consumer consumer = Consumer.from(STREAM_GROUP, consumerName);
+        // 启动时以及写库失败后，先处理本消费者尚未确认的条目
+        boolean recovering = true;
+        long lastClaim = System.currentTimeMillis();
+        while (running) {
+            try {
+                List<MapRecord<String, Object, Object>> records;
+                if(recovering) {
+                    records = stringRedisTemplate.opsForStream().read(consumer,
+                            StreamReadOptions.empty().count(pipelineConfig.getStreamBatchSize()),
+                            StreamOffset.create(key, ReadOffset.from("0")));
+                    if(records == null || records.isEmpty()) {
+                        recovering = false;
+                        continue;
+                    }
+                } else if(System.currentTimeMillis() - lastClaim > pipelineConfig.getStreamClaimIdle().toMillis()) {
+                    lastClaim = System.currentTimeMillis();
+                    records = claimIdle(key);
+                } else {
+                    records = stringRedisTemplate.opsForStream().read(consumer,
+                            StreamReadOptions.empty()
+                                    .count(pipelineConfig.getStreamBatchSize())
+                                    .block(pipelineConfig.getStreamBlock()),
+                            StreamOffset.create(key, ReadOffset.lastConsumed()));
+                }
+                if(records == null || records.isEmpty()) {
+                    continue;
+                }
+                try {
+                    handler.accept(records);
+                } catch (RuntimeException e) {
+                    if(isTransient(e) || !flushEach(key, records, handler)) {
+                        throw e;
+                    }
+                    continue;
+                }
+                acknowledge(key, records);
+            } catch (Exception e) {
+                if(!running) {
+                    return;
+                }
+                log.error("{} 写库失败，{} 毫秒后重试：{}", key, pipelineConfig.getStreamRetryInterval().toMillis(), e.getMessage());
+                recovering = true;
+                try {
+                    Thread.sleep(pipelineConfig.getStreamRetryInterval().toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 整批写库失败后逐条写入，确认写入成功以及移入死信的条目
+     * @return 全部条目都已确认时返回 true；仍有条目留在待确认列表中时返回 false，由调用方等待后重试
+     */
+    private boolean flushEach(String key, List<MapRecord<String, Object, Object>> records,
+                              java.util.function.Consumer<List<MapRecord<String, Object, Object>>> handler) {
+        List<MapRecord<String, Object, Object>> done = new ArrayList<>();
+        boolean remaining = false;
+        try {
+            for (MapRecord<String, Object, Object> record : records) {
+                try {
+                    handler.accept(List.of(record));
+                    done.add(record);
+                } catch (RuntimeException e) {
+                    if(isTransient(e)) {
+                        return false;
+                    }
+                    long deliveries = deliveries(key, record.getId());
+                    if(deliveries < pipelineConfig.getStreamMaxDeliveries()) {
+                        log.warn("{} 事件 {} 第 {} 次写库失败：{}", key, record.getId(), deliveries, e.getMessage());
+                        remaining = true;
+                        continue;
+                    }
+                    deadLetter(key, record, e);
+                    done.add(record);
+                }
+            }
+        } finally {
+            if(!done.isEmpty()) {
+                acknowledge(key, done);
+            }
+        }
+        return !remaining;
+    }
+
+    private void acknowledge(String key, List<MapRecord<String, Object, Object>> records) {
+        RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        stringRedisTemplate.opsForStream().acknowledge(key, STREAM_GROUP, ids);
+        stringRedisTemplate.opsForStream().delete(key, ids);
+    }
+
+    /**
+     * @return 条目已被投递的次数（XPENDING 中的投递计数）
+     */
+    private long deliveries(String key, RecordId id) {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(key, STREAM_GROUP, Range.closed(id.getValue(), id.getValue()), 1);
+        if(pending == null || pending.isEmpty()) {
+            return 0;
+        }
+        return pending.get(0).getTotalDeliveryCount();
+    }
+
+    /**
+     * 把无法写入的事件连同原条目id和失败原因追加到死信Stream
+     */
+    private void deadLetter(String key, MapRecord<String, Object, Object> record, Exception e) {
+        Map<String, String> value = new LinkedHashMap<>();
+        record.getValue().forEach((field, v) -> value.put(String.valueOf(field), String.valueOf(v)));
+        value.put("sourceId", record.getId().getValue());
+        value.put("error", String.valueOf(e.getMessage()));
+        stringRedisTemplate.opsForStream().add(StreamRecords.newRecord()
+                .in(key + STREAM_DEAD_LETTER_SUFFIX)
+                .ofMap(value));
+        meterRegistry.counter("manage.pipeline.stream.dead", "stream", key).increment();
+        log.error("{} 事件 {} 已投递 {} 次仍写库失败，移入死信：{}",
+                key, record.getId(), pipelineConfig.getStreamMaxDeliveries(), e.getMessage());
+    }
+
+    /**
+     * 数据库或Redis暂时不可用，整批重试即可，不算作事件本身的问题
+     */
+    private static boolean isTransient(Exception e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException;
+    }
+
+    /**
+     * 认领其他消费者长时间未确认的条目（该消费者可能已宕机）
+     */
+    private List<MapRecord<String, Object, Object>> claimIdle(String key) {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(key, STREAM_GROUP, Range.unbounded(), pipelineConfig.getStreamBatchSize());
+        if(pending == null || pending.isEmpty()) {
+            return List.of();
+        }
+        RecordId[] ids = pending.stream()
+                .filter(p -> !consumerName.equals(p.getConsumerName()))
+                .filter(p -> p.getElapsedTimeSinceLastDelivery().compareTo(pipelineConfig.getStreamClaimIdle()) > 0)
+                .map(p -> p.getId())
+                .toArray(RecordId[]::new);
+        if(ids.length == 0) {
+            return List.of();
+        }
+        log.warn("{} 认领 {} 条超时未确认的事件", key, ids.length);
+        return stringRedisTemplate.opsForStream()
+                .claim(key, STREAM_GROUP, consumerName, pipelineConfig.getStreamClaimIdle(), ids);
+    }
+
+    private static RegistrationDTO toRegistration(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> value = record.getValue();
+        return RegistrationDTO.builder()
+                .activityId(Long.valueOf((String) value.get("activityId")))
+                .registrationName(emptyToNull((String) value.get("registrationName")))
+                .college(emptyToNull((String) value.get("college")))
+                .phone((String) value.get("phone"))
+                .build();
+    }
+
+    private static RegistrationCheckinDTO toCheckin(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> value = record.getValue();
+        return RegistrationCheckinDTO.builder()
+                .activityId(Long.valueOf((String) value.get("activityId")))
+                .phone((String) value.get("phone"))
+                .latitude(new BigDecimal((String) value.get("latitude")))
+                .longitude(new BigDecimal((String) value.get("longitude")))
+                .build();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
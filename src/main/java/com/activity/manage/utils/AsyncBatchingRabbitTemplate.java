@@ -0,0 +1,205 @@
+package com.activity.manage.utils;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.batch.BatchingStrategy;
+import org.springframework.amqp.rabbit.batch.MessageBatch;
+import org.springframework.amqp.rabbit.batch.SimpleBatchingStrategy;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步合批发送的RabbitTemplate
+ * 请求线程只负责序列化并把消息交给单独的发送线程，发送线程将同一队列的消息合并成一条AMQP消息，
+ * 达到条数/字节上限或等待超过 linger 时间后统一发送；消费端的监听容器会自动拆批。
+ * 发送失败的批按原顺序放入重发队列，每隔 retryInterval 重发一次，重发队列非空时新的批排在其后；
+ * 等待重发的消息达到 retryLimit 条后直接拒绝新消息，由请求线程像直接发送失败一样收到异常，不再静默丢弃。
+ * 记录每次实际发送的批大小和耗时
+ */
+@Slf4j
+public class AsyncBatchingRabbitTemplate extends RabbitTemplate {
+
+    private final BatchingStrategy batchingStrategy;
+    private final ThreadPoolTaskScheduler scheduler;
+    private final Duration retryInterval;
+    private final int retryLimit;
+    private final DistributionSummary batchSize;
+    private final Timer publishLatency;
+
+    /**
+     * 发送失败等待重发的批，只在发送线程中访问
+     */
+    private final Deque<MessageBatch> retries = new ArrayDeque<>();
+    /**
+     * 等待重发的消息条数，请求线程据此拒绝新消息
+     */
+    private final AtomicInteger retrying = new AtomicInteger();
+    private ScheduledFuture<?> releaseTask;
+    private ScheduledFuture<?> retryTask;
+    private volatile boolean closed;
+
+    public AsyncBatchingRabbitTemplate(ConnectionFactory connectionFactory, int batchSize, int bufferLimit,
+                                       long linger, Duration retryInterval, int retryLimit,
+                                       MeterRegistry meterRegistry) {
+        super(connectionFactory);
+        this.batchingStrategy = new SimpleBatchingStrategy(batchSize, bufferLimit, linger);
+        this.scheduler = newScheduler();
+        this.retryInterval = retryInterval;
+        this.retryLimit = retryLimit;
+        this.batchSize = DistributionSummary.builder("manage.publisher.batch.size")
+                .description("每次发送到RabbitMQ的合批消息条数")
+                .register(meterRegistry);
+        this.publishLatency = Timer.builder("manage.publisher.publish.latency")
+                .description("每次合批发送的耗时")
+                .register(meterRegistry);
+        Gauge.builder("manage.publisher.retrying", retrying, AtomicInteger::get)
+                .description("发送失败等待重发的消息条数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 交给发送线程合批，合批与发送都在同一个线程中进行，保证同一队列内的顺序
+     * @throws AmqpException 等待重发的消息已达上限
+     */
+    @Override
+    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) throws AmqpException {
+        if (retrying.get() >= retryLimit) {
+            throw new AmqpException("合批发送失败待重发的消息已达 " + retryLimit + " 条，拒绝发送到 " + routingKey);
+        }
+        scheduler.execute(() -> {
+            if (correlationData != null) {
+                // 需要确认的消息不参与合批
+                publish(new MessageBatch(exchange, routingKey, message));
+                return;
+            }
+            cancelRelease();
+            MessageBatch batch = batchingStrategy.addToBatch(exchange, routingKey, message);
+            if (batch != null) {
+                publish(batch);
+            }
+            Date next = batchingStrategy.nextRelease();
+            if (next != null) {
+                releaseTask = scheduler.schedule(this::release, next.toInstant());
+            }
+        });
+    }
+
+    @Override
+    public void doSend(Channel channel, String exchange, String routingKey, Message message,
+                       boolean mandatory, CorrelationData correlationData) {
+        long start = System.nanoTime();
+        super.doSend(channel, exchange, routingKey, message, mandatory, correlationData);
+        publishLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSize.record(count(message));
+    }
+
+    /**
+     * 立即发出缓冲区中未凑满的批
+     */
+    public void flush() {
+        scheduler.execute(this::release);
+    }
+
+    @Override
+    public void destroy() {
+        // 发出缓冲区中剩余的消息并最后重发一次，再关闭发送线程
+        closed = true;
+        scheduler.execute(() -> {
+            release();
+            retry();
+            if (!retries.isEmpty()) {
+                log.error("关闭时仍有 {} 条合批消息未能发送到RabbitMQ", retrying.get());
+            }
+        });
+        scheduler.shutdown();
+        super.destroy();
+    }
+
+    private void release() {
+        cancelRelease();
+        batchingStrategy.releaseBatches().forEach(this::publish);
+    }
+
+    private void cancelRelease() {
+        if (releaseTask != null) {
+            releaseTask.cancel(false);
+            releaseTask = null;
+        }
+    }
+
+    /**
+     * 发送一批消息，失败或已有批在等待重发时放入重发队列
+     */
+    private void publish(MessageBatch batch) {
+        if (retries.isEmpty()) {
+            try {
+                super.send(batch.getExchange(), batch.getRoutingKey(), batch.getMessage(), null);
+                return;
+            } catch (AmqpException e) {
+                log.warn("合批发送消息到 {} 失败，稍后重发：{}", batch.getRoutingKey(), e.getMessage());
+            }
+        }
+        retries.addLast(batch);
+        retrying.addAndGet(count(batch.getMessage()));
+        scheduleRetry();
+    }
+
+    /**
+     * 按顺序重发，遇到失败就停下等待下一次重发
+     */
+    private void retry() {
+        retryTask = null;
+        while (!retries.isEmpty()) {
+            MessageBatch batch = retries.peekFirst();
+            try {
+                super.send(batch.getExchange(), batch.getRoutingKey(), batch.getMessage(), null);
+            } catch (AmqpException e) {
+                log.warn("重发合批消息到 {} 失败，{} 条消息等待重发：{}",
+                        batch.getRoutingKey(), retrying.get(), e.getMessage());
+                scheduleRetry();
+                return;
+            }
+            retries.pollFirst();
+            retrying.addAndGet(-count(batch.getMessage()));
+        }
+    }
+
+    private void scheduleRetry() {
+        if (retryTask == null && !closed) {
+            retryTask = scheduler.schedule(this::retry, Instant.now().plus(retryInterval));
+        }
+    }
+
+    private static int count(Message message) {
+        Object size = message.getMessageProperties().getHeader(AmqpHeaders.BATCH_SIZE);
+        return size instanceof Number number ? number.intValue() : 1;
+    }
+
+    private static ThreadPoolTaskScheduler newScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("amqp-batch-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(5);
+        scheduler.initialize();
+        return scheduler;
+    }
+}
@@ -0,0 +1,43 @@
+package com.activity.manage.utils;
+
+import cn.hutool.core.util.HashUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一致性哈希环
+ * 每个节点在环上放置若干虚拟节点，键顺时针落到第一个虚拟节点所属的节点上；
+ * 节点增减时只有相邻区间的键改变归属
+ */
+public class ConsistentHashRing<T> {
+
+    private final TreeMap<Integer, T> ring = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<T> nodes, int virtualNodes) {
+        for (T node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * 查找键所属的节点
+     * @param key
+     * @return 节点，环为空时返回 null
+     */
+    public T get(Object key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Integer, T> entry = ring.ceilingEntry(hash(String.valueOf(key)));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public static int hash(String key) {
+        return HashUtil.murmur32(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
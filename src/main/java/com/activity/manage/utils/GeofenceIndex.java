@@ -0,0 +1,217 @@
+package com.activity.manage.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 签到范围的内存索引
+ * 以范围中心为原点把经纬度投影到平面（米），在整体外接矩形上划分 GRID x GRID 的网格，预先把每个格子标记为
+ * 完全在范围内、完全在范围外或跨越边界；判断时先比较外接矩形，再查格子，只有落在边界格子里的点才需要
+ * 对该格子关联的少数签到点和多边形做精确计算。适用于场馆尺度（数公里以内），投影误差可以忽略
+ */
+public class GeofenceIndex {
+
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final int GRID = 32;
+
+    private static final byte OUTSIDE = 0;
+    private static final byte INSIDE = 1;
+    private static final byte BOUNDARY = 2;
+
+    private final double originLatitude;
+    private final double originLongitude;
+    private final double metersPerDegreeLongitude;
+
+    /**
+     * 圆形签到点：{x, y, 半径}
+     */
+    private final double[][] anchors;
+    /**
+     * 多边形顶点：{x, y}，少于三个点时为空
+     */
+    private final double[][] polygon;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final byte[] cells = new byte[GRID * GRID];
+    private final int[][] cellAnchors = new int[GRID * GRID][];
+    private final boolean[] cellPolygon = new boolean[GRID * GRID];
+
+    /**
+     * @param anchors 圆形签到点 {纬度, 经度, 半径（米）}
+     * @param polygon 多边形顶点 {纬度, 经度}
+     */
+    public GeofenceIndex(List<double[]> anchors, List<double[]> polygon) {
+        List<double[]> points = new ArrayList<>(anchors);
+        points.addAll(polygon);
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("签到范围为空");
+        }
+        double latitude = 0, longitude = 0;
+        for (double[] point : points) {
+            latitude += point[0];
+            longitude += point[1];
+        }
+        originLatitude = latitude / points.size();
+        originLongitude = longitude / points.size();
+        metersPerDegreeLongitude = Math.toRadians(1) * EARTH_RADIUS * Math.cos(Math.toRadians(originLatitude));
+
+        this.anchors = new double[anchors.size()][];
+        for (int i = 0; i < anchors.size(); i++) {
+            double[] anchor = anchors.get(i);
+            this.anchors[i] = new double[]{x(anchor[1]), y(anchor[0]), anchor[2]};
+        }
+        if (polygon.size() >= 3) {
+            this.polygon = new double[polygon.size()][];
+            for (int i = 0; i < polygon.size(); i++) {
+                this.polygon[i] = new double[]{x(polygon.get(i)[1]), y(polygon.get(i)[0])};
+            }
+        } else {
+            this.polygon = new double[0][];
+        }
+
+        double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+        for (double[] anchor : this.anchors) {
+            x0 = Math.min(x0, anchor[0] - anchor[2]);
+            y0 = Math.min(y0, anchor[1] - anchor[2]);
+            x1 = Math.max(x1, anchor[0] + anchor[2]);
+            y1 = Math.max(y1, anchor[1] + anchor[2]);
+        }
+        for (double[] vertex : this.polygon) {
+            x0 = Math.min(x0, vertex[0]);
+            y0 = Math.min(y0, vertex[1]);
+            x1 = Math.max(x1, vertex[0]);
+            y1 = Math.max(y1, vertex[1]);
+        }
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+        // 退化为一条线或一个点时给格子留出最小尺寸，避免除零
+        cellWidth = Math.max(x1 - x0, 1e-6) / GRID;
+        cellHeight = Math.max(y1 - y0, 1e-6) / GRID;
+        build();
+    }
+
+    /**
+     * 判断坐标是否在签到范围内
+     * @param latitude 纬度
+     * @param longitude 经度
+     * @return 是否在范围内
+     */
+    public boolean contains(double latitude, double longitude) {
+        double x = x(longitude);
+        double y = y(latitude);
+        if (x < minX || x > maxX || y < minY || y > maxY) {
+            return false;
+        }
+        // 恰好落在外接矩形上边或右边的点归入最后一格
+        int column = Math.min((int) ((x - minX) / cellWidth), GRID - 1);
+        int row = Math.min((int) ((y - minY) / cellHeight), GRID - 1);
+        int cell = row * GRID + column;
+        if (cells[cell] != BOUNDARY) {
+            return cells[cell] == INSIDE;
+        }
+        for (int anchor : cellAnchors[cell]) {
+            if (inAnchor(anchor, x, y)) {
+                return true;
+            }
+        }
+        return cellPolygon[cell] && inPolygon(x, y);
+    }
+
+    private void build() {
+        for (int row = 0; row < GRID; row++) {
+            for (int column = 0; column < GRID; column++) {
+                int cell = row * GRID + column;
+                double x0 = minX + column * cellWidth, x1 = x0 + cellWidth;
+                double y0 = minY + row * cellHeight, y1 = y0 + cellHeight;
+                boolean inside = false;
+                List<Integer> candidates = new ArrayList<>();
+                for (int i = 0; i < anchors.length && !inside; i++) {
+                    double[] anchor = anchors[i];
+                    double r2 = anchor[2] * anchor[2];
+                    // 圆是凸的，格子最远的角在圆内则整个格子在圆内
+                    double farX = Math.max(Math.abs(x0 - anchor[0]), Math.abs(x1 - anchor[0]));
+                    double farY = Math.max(Math.abs(y0 - anchor[1]), Math.abs(y1 - anchor[1]));
+                    if (farX * farX + farY * farY <= r2) {
+                        inside = true;
+                    } else {
+                        double nearX = Math.max(Math.max(x0 - anchor[0], anchor[0] - x1), 0);
+                        double nearY = Math.max(Math.max(y0 - anchor[1], anchor[1] - y1), 0);
+                        if (nearX * nearX + nearY * nearY <= r2) {
+                            candidates.add(i);
+                        }
+                    }
+                }
+                boolean polygonBoundary = false;
+                if (!inside && polygon.length > 0) {
+                    if (edgeCrosses(x0, y0, x1, y1)) {
+                        polygonBoundary = true;
+                    } else if (inPolygon((x0 + x1) / 2, (y0 + y1) / 2)) {
+                        // 没有边穿过格子，格子要么整体在多边形内，要么整体在外
+                        inside = true;
+                    }
+                }
+                if (inside) {
+                    cells[cell] = INSIDE;
+                } else if (!candidates.isEmpty() || polygonBoundary) {
+                    cells[cell] = BOUNDARY;
+                    cellAnchors[cell] = candidates.stream().mapToInt(Integer::intValue).toArray();
+                    cellPolygon[cell] = polygonBoundary;
+                } else {
+                    cells[cell] = OUTSIDE;
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否有多边形的边与格子相交（以边的外接矩形近似，宁可多标记边界格子）
+     */
+    private boolean edgeCrosses(double x0, double y0, double x1, double y1) {
+        for (int i = 0, j = polygon.length - 1; i < polygon.length; j = i++) {
+            double[] a = polygon[j];
+            double[] b = polygon[i];
+            if (Math.max(a[0], b[0]) >= x0 && Math.min(a[0], b[0]) <= x1
+                    && Math.max(a[1], b[1]) >= y0 && Math.min(a[1], b[1]) <= y1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inAnchor(int index, double x, double y) {
+        double[] anchor = anchors[index];
+        double dx = x - anchor[0];
+        double dy = y - anchor[1];
+        return dx * dx + dy * dy <= anchor[2] * anchor[2];
+    }
+
+    /**
+     * 射线法判断点是否在多边形内
+     */
+    private boolean inPolygon(double x, double y) {
+        boolean inside = false;
+        for (int i = 0, j = polygon.length - 1; i < polygon.length; j = i++) {
+            double[] a = polygon[i];
+            double[] b = polygon[j];
+            if ((a[1] > y) != (b[1] > y) && x < (b[0] - a[0]) * (y - a[1]) / (b[1] - a[1]) + a[0]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private double x(double longitude) {
+        return (longitude - originLongitude) * metersPerDegreeLongitude;
+    }
+
+    private double y(double latitude) {
+        return Math.toRadians(latitude - originLatitude) * EARTH_RADIUS;
+    }
+}
@@ -0,0 +1,248 @@
+package com.activity.manage.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的追加式日志
+ * 日志由若干固定大小的段文件组成，文件名为段的起始逻辑偏移量；
+ * 每条记录格式为 [长度 int][CRC32 int][内容]，长度为 0 表示该段后续尚未写入。
+ * 已确认的偏移量保存在 checkpoint 文件中，确认位置之前的整段文件会被删除，
+ * 重启时从 checkpoint 开始重新读取尚未确认的记录
+ */
+@Slf4j
+public class MappedOutbox implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * 日志中的一条记录
+     * @param offset 记录的起始逻辑偏移量
+     * @param nextOffset 下一条记录的逻辑偏移量，确认该记录时提交此值
+     * @param payload 记录内容
+     */
+    public record Entry(long offset, long nextOffset, byte[] payload) {
+    }
+
+    private final Path dir;
+    private final int segmentSize;
+    private final boolean force;
+    /**
+     * 段起始偏移量 -> 段文件映射
+     */
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final MappedByteBuffer checkpoint;
+
+    /**
+     * 已写入位置，写入线程写完数据后再更新，读取线程只读到此位置为止
+     */
+    private volatile long writeOffset;
+    private volatile long committedOffset;
+
+    /**
+     * @param dir 日志目录
+     * @param segmentSize 单个段文件大小（字节）
+     * @param force 每次追加后是否强制刷盘，关闭时只保证进程崩溃不丢数据
+     */
+    public MappedOutbox(Path dir, int segmentSize, boolean force) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.force = force;
+        Files.createDirectories(dir);
+        this.checkpoint = map(dir.resolve(CHECKPOINT_FILE), Long.BYTES);
+        this.committedOffset = checkpoint.getLong(0);
+        recover();
+    }
+
+    /**
+     * 追加一条记录
+     * @param payload
+     * @return 记录的逻辑偏移量
+     */
+    public synchronized long append(byte[] payload) {
+        int size = HEADER_SIZE + payload.length;
+        if(size > segmentSize) {
+            throw new IllegalArgumentException("记录大小 " + size + " 超过段文件大小 " + segmentSize);
+        }
+        long base = segments.lastKey();
+        if(writeOffset - base + size > segmentSize) {
+            // 当前段剩余空间不足，开启下一段，旧段尾部留空
+            base = base + segmentSize;
+            segments.put(base, mapSegment(base));
+            writeOffset = base;
+        }
+        MappedByteBuffer buffer = segments.get(base);
+        int position = (int) (writeOffset - base);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.put(position + HEADER_SIZE, payload);
+        buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        // 最后写长度，崩溃时长度为 0 的记录视为未写入
+        buffer.putInt(position, payload.length);
+        if(force) {
+            buffer.force(position, size);
+        }
+        long offset = writeOffset;
+        writeOffset = offset + size;
+        return offset;
+    }
+
+    /**
+     * 从指定位置开始读取至多 max 条已写入的记录
+     * @param from 起始逻辑偏移量
+     * @param max
+     * @return
+     */
+    public List<Entry> read(long from, int max) {
+        List<Entry> entries = new ArrayList<>();
+        long limit = writeOffset;
+        long offset = from;
+        while (entries.size() < max && offset < limit) {
+            Map.Entry<Long, MappedByteBuffer> segment;
+            synchronized (this) {
+                segment = segments.floorEntry(offset);
+            }
+            if(segment == null) {
+                break;
+            }
+            long base = segment.getKey();
+            int position = (int) (offset - base);
+            int length = position + HEADER_SIZE <= segmentSize ? segment.getValue().getInt(position) : 0;
+            if(length == 0) {
+                // 该段已写完，跳到下一段
+                offset = base + segmentSize;
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.getValue().get(position + HEADER_SIZE, payload);
+            long next = offset + HEADER_SIZE + length;
+            entries.add(new Entry(offset, next, payload));
+            offset = next;
+        }
+        return entries;
+    }
+
+    /**
+     * 确认偏移量之前的记录都已处理，删除已经全部确认的段文件
+     * @param offset
+     */
+    public synchronized void commit(long offset) {
+        if(offset <= committedOffset) {
+            return;
+        }
+        committedOffset = offset;
+        checkpoint.putLong(0, offset);
+        checkpoint.force();
+        while (segments.size() > 1 && segments.firstKey() + segmentSize <= offset) {
+            long base = segments.pollFirstEntry().getKey();
+            deleteSegment(base);
+        }
+    }
+
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public long getWriteOffset() {
+        return writeOffset;
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.values().forEach(MappedByteBuffer::force);
+        checkpoint.force();
+    }
+
+    /**
+     * 加载已有的段文件，删除已全部确认的段，并找到最后一段的写入位置
+     */
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(base -> {
+                        if(base + segmentSize <= committedOffset) {
+                            deleteSegment(base);
+                        } else {
+                            segments.put(base, mapSegment(base));
+                        }
+                    });
+        }
+        if(segments.isEmpty()) {
+            // 没有段文件时从确认位置所在的段开始
+            long base = committedOffset - committedOffset % segmentSize;
+            segments.put(base, mapSegment(base));
+            writeOffset = committedOffset;
+            return;
+        }
+        long base = segments.lastKey();
+        MappedByteBuffer buffer = segments.get(base);
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if(length <= 0 || position + HEADER_SIZE + length > segmentSize || !valid(buffer, position, length)) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+        // 清掉崩溃时写了一半的记录
+        for (int i = position; i < Math.min(position + HEADER_SIZE, segmentSize); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        writeOffset = Math.max(base + position, committedOffset);
+        log.info("发件箱恢复完成：确认位置 {}，写入位置 {}，待投递 {} 字节", committedOffset, writeOffset, writeOffset - committedOffset);
+    }
+
+    private boolean valid(MappedByteBuffer buffer, int position, int length) {
+        byte[] payload = new byte[length];
+        buffer.get(position + HEADER_SIZE, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(position + Integer.BYTES);
+    }
+
+    private MappedByteBuffer mapSegment(long base) {
+        try {
+            return map(segmentPath(base), segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void deleteSegment(long base) {
+        try {
+            Files.deleteIfExists(segmentPath(base));
+        } catch (IOException e) {
+            log.warn("删除发件箱段文件 {} 失败：{}", base, e.getMessage());
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return dir.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.activity.manage.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 单个文本字段的 n-gram 倒排索引
+ * 文本去掉空白并转为小写后，按单字与相邻两字（bigram）切分，每个 gram 对应一个按id升序排列的 long 数组；
+ * 查询两个字以上时取查询串全部 bigram 的倒排表求交集，单字查询直接取单字的倒排表；
+ * bigram 都出现并不代表查询串连续出现（"abab" 的 bigram 在 "abba" 中也都有），超过两个字的查询再用正排保存的文本核对一遍。
+ * 文档更新时先按正排记录的 gram 从倒排表中删除再重新插入；读多写少，用读写锁保护
+ */
+public class NgramIndex {
+
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * 按id升序排列的倒排表，末尾留有空位以减少插入时的复制
+     */
+    private static final class Postings {
+        private final String gram;
+        private long[] ids = new long[2];
+        private int size;
+
+        private Postings(String gram) {
+            this.gram = gram;
+        }
+
+        private void add(long id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                return;
+            }
+            i = -i - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            ids[i] = id;
+            size++;
+        }
+
+        private void remove(long id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) {
+                return;
+            }
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            size--;
+        }
+
+        private void trim() {
+            if (size < ids.length) {
+                ids = Arrays.copyOf(ids, size);
+            }
+        }
+    }
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    /**
+     * 正排：规范化后的文本用于核对候选，gram 用于删除和更新
+     */
+    private record Document(String text, String[] grams) {
+    }
+
+    /**
+     * 文档id -> 正排
+     */
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 写入或替换文档
+     * @param id
+     * @param text 为空时只删除
+     */
+    public void put(long id, String text) {
+        String normalized = normalize(text);
+        Set<String> grams = grams(normalized);
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            if (grams.isEmpty()) {
+                return;
+            }
+            String[] keys = new String[grams.size()];
+            int n = 0;
+            for (String gram : grams) {
+                Postings list = postings.computeIfAbsent(gram, Postings::new);
+                list.add(id);
+                // 正排复用倒排表中的 gram，同一个 gram 只保存一份
+                keys[n++] = list.gram;
+            }
+            documents.put(id, new Document(normalized, keys));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除文档
+     * @param id
+     */
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 收缩所有倒排表的空位，批量建立索引后调用
+     */
+    public void trim() {
+        lock.writeLock().lock();
+        try {
+            postings.values().forEach(Postings::trim);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查询包含查询串的文档
+     * @param query
+     * @return 按id升序排列的文档id，查询串为空时返回 null
+     */
+    public long[] search(String query) {
+        String text = normalize(query);
+        if (text.isEmpty()) {
+            return null;
+        }
+        Set<String> grams = new LinkedHashSet<>();
+        if (text.length() == 1) {
+            grams.add(text);
+        } else {
+            for (int i = 0; i + 1 < text.length(); i++) {
+                grams.add(text.substring(i, i + 2));
+            }
+        }
+        lock.readLock().lock();
+        try {
+            // 从最短的倒排表开始求交集
+            Postings[] lists = new Postings[grams.size()];
+            int n = 0;
+            for (String gram : grams) {
+                Postings list = postings.get(gram);
+                if (list == null || list.size == 0) {
+                    return EMPTY;
+                }
+                lists[n++] = list;
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+            long[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+            for (int i = 1; i < lists.length && result.length > 0; i++) {
+                result = intersect(result, lists[i]);
+            }
+            return text.length() > 2 ? verify(result, text) : result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 已索引的文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeLocked(long id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        for (String gram : document.grams()) {
+            Postings list = postings.get(gram);
+            if (list == null) {
+                continue;
+            }
+            list.remove(id);
+            if (list.size == 0) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    private static long[] intersect(long[] ids, Postings list) {
+        long[] result = new long[Math.min(ids.length, list.size)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length && j < list.size) {
+            long a = ids[i];
+            long b = list.ids[j];
+            if (a == b) {
+                result[n++] = a;
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * 去掉文本中不包含查询串的候选，调用方需持有读锁
+     */
+    private long[] verify(long[] ids, String text) {
+        long[] result = new long[ids.length];
+        int n = 0;
+        for (long id : ids) {
+            Document document = documents.get(id);
+            if (document != null && document.text().contains(text)) {
+                result[n++] = id;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * 规范化文本的全部单字与 bigram
+     */
+    private static Set<String> grams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            grams.add(text.substring(i, i + 1));
+            if (i + 1 < text.length()) {
+                grams.add(text.substring(i, i + 2));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 去掉空白并转为小写
+     */
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+}
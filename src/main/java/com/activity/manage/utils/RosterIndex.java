@@ -0,0 +1,94 @@
+package com.activity.manage.utils;
+
+import java.util.Arrays;
+
+/**
+ * 签到名单的内存索引
+ * 报名记录在签到开放时获得活动内连续的序号，签到状态以序号为偏移存放在 Redis 位图中；
+ * 本索引负责手机号与序号的互相转换。手机号按 long 存放，按手机号排序后二分查找，每条记录约 20 字节
+ */
+public class RosterIndex {
+
+    /**
+     * 按手机号升序排列的手机号与对应序号
+     */
+    private final long[] phones;
+    private final int[] seqs;
+    /**
+     * 以序号为下标的手机号，序号空缺处为 0
+     */
+    private final long[] phoneBySeq;
+
+    /**
+     * @param phones 手机号
+     * @param seqs 与手机号一一对应的序号
+     * @param size 名单长度（最大序号加一）
+     */
+    public RosterIndex(long[] phones, int[] seqs, int size) {
+        int n = phones.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(phones[a], phones[b]));
+        this.phones = new long[n];
+        this.seqs = new int[n];
+        this.phoneBySeq = new long[size];
+        for (int i = 0; i < n; i++) {
+            this.phones[i] = phones[order[i]];
+            this.seqs[i] = seqs[order[i]];
+            phoneBySeq[seqs[order[i]]] = phones[order[i]];
+        }
+    }
+
+    /**
+     * 查询手机号的序号
+     * @param phone
+     * @return 序号，不在名单中时返回 -1
+     */
+    public int seq(String phone) {
+        long key = toLong(phone);
+        if (key < 0) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(phones, key);
+        return i >= 0 ? seqs[i] : -1;
+    }
+
+    /**
+     * 查询序号对应的手机号
+     * @param seq
+     * @return 手机号，序号空缺时返回 null
+     */
+    public String phone(int seq) {
+        if (seq < 0 || seq >= phoneBySeq.length || phoneBySeq[seq] == 0) {
+            return null;
+        }
+        return String.format("%011d", phoneBySeq[seq]);
+    }
+
+    /**
+     * @return 名单长度，即位图中有效位的个数
+     */
+    public int size() {
+        return phoneBySeq.length;
+    }
+
+    /**
+     * 手机号转为 long，不是 11 位数字时返回 -1
+     */
+    public static long toLong(String phone) {
+        if (phone == null || phone.length() != 11) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
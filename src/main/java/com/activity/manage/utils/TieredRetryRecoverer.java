@@ -0,0 +1,85 @@
+package com.activity.manage.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.activity.manage.utils.constant.RabbitMQConstant.*;
+
+/**
+ * 分级重试的消息恢复器
+ * 监听方法抛出异常后不在消费线程中等待，而是把消息转发到下一级延迟队列，
+ * 由队列 TTL 到期后死信回原队列；重试次数用完的消息转入停车场队列等待人工回放。
+ * 转发经 broker 发布确认后原消息才被确认，不会再被原队列反复投递；
+ * 确认失败或超时时抛出异常，原消息由容器重新入队，不会在转发丢失的情况下被确认
+ */
+@Slf4j
+public class TieredRetryRecoverer implements MessageBatchRecoverer {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final int tiers;
+    private final long confirmTimeout;
+
+    public TieredRetryRecoverer(RabbitTemplate rabbitTemplate, int tiers, Duration confirmTimeout) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.tiers = tiers;
+        this.confirmTimeout = confirmTimeout.toMillis();
+    }
+
+    @Override
+    public void recover(Message message, Throwable cause) {
+        recover(List.of(message), cause);
+    }
+
+    /**
+     * 在同一个通道上转发整批消息并等待发布确认，确认失败时抛出异常，
+     * 原消息不会被确认，由容器重新入队
+     */
+    @Override
+    public void recover(List<Message> messages, Throwable cause) {
+        rabbitTemplate.invoke(operations -> {
+            for (Message message : messages) {
+                forward(operations, message, cause);
+            }
+            operations.waitForConfirmsOrDie(confirmTimeout);
+            return null;
+        });
+        log.warn("{} 条消息消费失败，已转发到重试队列或停车场：{}", messages.size(), rootMessage(cause));
+    }
+
+    private void forward(RabbitOperations operations, Message message, Throwable cause) {
+        MessageProperties properties = message.getMessageProperties();
+        String queue = properties.getHeader(ORIGINAL_QUEUE_HEADER);
+        if (queue == null) {
+            queue = properties.getConsumerQueue();
+        }
+        Integer count = properties.getHeader(RETRY_COUNT_HEADER);
+        int retried = count == null ? 0 : count;
+
+        properties.setHeader(ORIGINAL_QUEUE_HEADER, queue);
+        properties.setHeader(RETRY_COUNT_HEADER, retried + 1);
+        properties.setHeader(EXCEPTION_HEADER, rootMessage(cause));
+        if (retried < tiers) {
+            // 路由键取原队列名，重试队列未指定死信路由键，到期后按该路由键经默认交换机回到原队列
+            operations.send(RETRY_EXCHANGE_PREFIX + (retried + 1), queue, message);
+            log.debug("消息消费失败，第 {} 次重试，队列 {}", retried + 1, queue);
+        } else {
+            operations.send("", PARKING_QUEUE, message);
+            log.error("消息重试 {} 次仍失败，转入停车场，队列 {}：{}", retried, queue, rootMessage(cause));
+        }
+    }
+
+    private static String rootMessage(Throwable cause) {
+        Throwable root = cause;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getClass().getSimpleName() + ": " + root.getMessage();
+    }
+}
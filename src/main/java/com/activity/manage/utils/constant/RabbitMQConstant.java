@@ -5,4 +5,23 @@ public class RabbitMQConstant {
     public static final String REGISTRATION_QUEUE = ".registration.queue";
 
     public static final String CHECKIN_QUEUE = ".checkin.queue";
+
+    // 报名队列分区后，第 i 个分区为 REGISTRATION_QUEUE + "." + i
+    public static final String REGISTRATION_PARTITION_SEPARATOR = ".";
+
+    // 第 n 级重试交换机/队列为 前缀 + n，消息在其中停留该级的 TTL 后死信回原队列
+    public static final String RETRY_EXCHANGE_PREFIX = ".retry.exchange.";
+
+    public static final String RETRY_QUEUE_PREFIX = ".retry.queue.";
+
+    public static final String PARKING_QUEUE = ".parking.queue";
+
+    // 已失败次数
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+
+    // 消息原本所在的队列，重试与回放都据此投回
+    public static final String ORIGINAL_QUEUE_HEADER = "x-original-queue";
+
+    // 最后一次失败的原因
+    public static final String EXCEPTION_HEADER = "x-exception-message";
 }
@@ -6,7 +6,32 @@ public class RedisConstant {
 
     public static final String REGISTRATION_ACTIVITY_KEY = "registration:activity:";
     public static final String REGISTRATION_REGISTRATOR_KEY = "registration:registrator:";
+    public static final String REGISTRATION_SHARDS_KEY = "registration:shards:";
+    public static final String REGISTRATION_TRANSFER_KEY = "registration:transfer:";
+    public static final String REGISTRATION_TRANSFER_PENDING_KEY = "registration:transfer:pending";
+    public static final String REGISTRATION_SOLD_OUT_CHANNEL = "registration:soldout";
 
-    public static final String CHECKIN_USER_KEY = "checkin:user:";
+    public static final String CHECKIN_BITMAP_KEY = "checkin:bitmap:";
     public static final String CHECKIN_LOCATION_KEY = "checkin:location:";
+    public static final String CHECKIN_GEOFENCE_CHANNEL = "checkin:geofence";
+    public static final String CHECKIN_DONE_KEY = "checkin:done:";
+    public static final String CHECKIN_STATS_KEY = "checkin:stats:";
+    public static final String CHECKIN_RECENT_KEY = "checkin:recent:";
+    public static final String CHECKIN_EVENT_CHANNEL = "checkin:event";
+    public static final String CHECKIN_ROSTER_KEY = "checkin:roster:";
+    public static final String CHECKIN_FENCE_KEY = "checkin:fence:";
+    public static final String CHECKIN_OPENING_KEY = "checkin:opening:";
+
+    public static final String REGISTRATION_STREAM_KEY = "stream:registration";
+    public static final String CHECKIN_STREAM_KEY = "stream:checkin";
+    public static final String STREAM_GROUP = "manage";
+    public static final String STREAM_DEAD_LETTER_SUFFIX = ":dead";
+
+    public static final String ACTIVITY_SEARCH_CHANNEL = "activity:search";
+    public static final String ACTIVITY_SCHEDULE_KEY = "activity:schedule:";
+    public static final String ACTIVITY_SHARD_NODES_KEY = "activity:shard:nodes";
+    public static final String ACTIVITY_SHARD_LEASE_KEY = "activity:shard:lease:";
+    public static final String ACTIVITY_SHARD_FENCE_KEY = "activity:shard:fence";
+
+    public static final String REGISTRATION_PARTITION_NODES_KEY = "registration:partition:nodes";
 }
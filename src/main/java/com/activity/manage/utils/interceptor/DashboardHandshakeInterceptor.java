@@ -0,0 +1,58 @@
+package com.activity.manage.utils.interceptor;
+
+import cn.hutool.core.util.StrUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+import static com.activity.manage.utils.constant.RedisConstant.LOGIN_ADMIN_KEY;
+
+/**
+ * 签到看板握手拦截
+ * 浏览器的 WebSocket 无法自定义请求头，令牌既可以放在 authorization 请求头，也可以放在 token 参数中
+ */
+public class DashboardHandshakeInterceptor implements HandshakeInterceptor {
+    public static final String ACTIVITY_ID = "activityId";
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    public DashboardHandshakeInterceptor(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)) {
+            return false;
+        }
+        HttpServletRequest httpRequest = servletRequest.getServletRequest();
+        String token = httpRequest.getHeader("authorization");
+        if (StrUtil.isBlank(token)) {
+            token = httpRequest.getParameter("token");
+        }
+        if (StrUtil.isBlank(token) || !Boolean.TRUE.equals(stringRedisTemplate.hasKey(LOGIN_ADMIN_KEY + token))) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+        String activityId = httpRequest.getParameter(ACTIVITY_ID);
+        if (StrUtil.isBlank(activityId) || !StrUtil.isNumeric(activityId)) {
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return false;
+        }
+        attributes.put(ACTIVITY_ID, Long.valueOf(activityId));
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
@@ -0,0 +1,16 @@
+-- 获取或续约分片租约，新获得租约时从全局计数器取一个递增的防护令牌
+-- KEYS[1]: 分片租约键，值为 节点id|令牌  KEYS[2]: 防护令牌计数器键
+-- ARGV[1]: 节点id  ARGV[2]: 租约时长（毫秒）
+-- 返回令牌，租约被其他节点持有时返回 -1
+local lease = redis.call('get', KEYS[1])
+if not lease then
+    local token = redis.call('incr', KEYS[2])
+    redis.call('set', KEYS[1], ARGV[1] .. '|' .. token, 'px', ARGV[2])
+    return token
+end
+local separator = string.find(lease, '|', 1, true)
+if string.sub(lease, 1, separator - 1) ~= ARGV[1] then
+    return -1
+end
+redis.call('pexpire', KEYS[1], ARGV[2])
+return tonumber(string.sub(lease, separator + 1))
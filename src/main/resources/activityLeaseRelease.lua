@@ -0,0 +1,6 @@
+-- 释放分片租约，只删除本节点持有的租约
+-- KEYS[1]: 分片租约键  ARGV[1]: 节点id|令牌
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return redis.call('del', KEYS[1])
+end
+return 0
@@ -0,0 +1,8 @@
+-- 领取到期的活动事件，领取即移出，集群中每个事件只由一个实例处理
+-- KEYS[1]: 活动事件有序集合键
+-- ARGV[1]: 当前时间戳（毫秒）  ARGV[2]: 最多领取的事件数
+local events = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'limit', 0, ARGV[2])
+if #events > 0 then
+    redis.call('zrem', KEYS[1], unpack(events))
+end
+return events
@@ -0,0 +1,40 @@
+-- KEYS[1]: 签到位图键  KEYS[2]: 签到开放标记（活动坐标与签到半径的哈希键）
+-- KEYS[3]: 签到统计哈希键  KEYS[4]: 最近签到列表键
+-- KEYS[5]: 签到事件流（可选，仅Redis Stream流水线使用），ARGV[7..] 为事件字段
+-- ARGV[1]: 手机号  ARGV[2]: 活动id  ARGV[3]: 签到时间戳（毫秒）  ARGV[4]: 签到广播频道  ARGV[5]: 最近签到保留条数
+-- ARGV[6]: 报名者在活动内的签到序号
+-- 签到范围与是否报名已在应用内校验，脚本只负责置位
+local bitmapKey = KEYS[1]
+local locationKey = KEYS[2]
+local phone = ARGV[1]
+
+-- 判断签到是否已开放
+if(redis.call('exists', locationKey) == 0) then
+    return 1
+end
+
+-- 置位，原来已经是 1 说明已签到过
+if(redis.call('setbit', bitmapKey, ARGV[6], 1) == 1) then
+    return 5
+end
+
+-- 更新签到统计并广播给看板
+local checked = redis.call('bitcount', bitmapKey)
+redis.call('hset', KEYS[3], 'checked', checked)
+local entry = phone .. '|' .. ARGV[3]
+redis.call('lpush', KEYS[4], entry)
+redis.call('ltrim', KEYS[4], 0, tonumber(ARGV[5]) - 1)
+if(redis.call('pttl', KEYS[4]) < 0) then
+    local ttl = redis.call('pttl', KEYS[3])
+    if(ttl > 0) then
+        redis.call('pexpire', KEYS[4], ttl)
+    end
+end
+redis.call('publish', ARGV[4], 'checkin|' .. ARGV[2] .. '|' .. checked .. '|' .. entry)
+
+-- 追加签到事件，由消费组异步写入数据库
+if(KEYS[5]) then
+    redis.call('xadd', KEYS[5], '*', unpack(ARGV, 7))
+end
+
+return 0
@@ -0,0 +1,25 @@
+-- 开始加载签到名单，检查与重置在同一个脚本内完成
+-- KEYS[1]: 签到开放标记（活动坐标与签到半径的哈希键）  KEYS[2]: 活动的签到防护令牌键  KEYS[3]: 名单加载锁键
+-- KEYS[4]: 名单加载进度键  KEYS[5]: 签到位图键  KEYS[6]: 签到统计哈希键  KEYS[7]: 最近签到列表键
+-- ARGV[1]: 分片租约的防护令牌  ARGV[2]: 本次加载的持有者标识  ARGV[3]: 加载锁时长（毫秒）  ARGV[4]: 防护令牌的保留秒数
+-- 返回 0 签到已开放；-1 令牌落后于已开始加载的令牌（租约已被接管）；-2 其他线程或节点正在加载；
+-- 1 全新加载，已清理上一次签到残留的数据；2 从上一次中断的进度继续
+if(redis.call('exists', KEYS[1]) == 1) then
+    return 0
+end
+
+local fence = tonumber(redis.call('get', KEYS[2]) or '0')
+if(tonumber(ARGV[1]) < fence) then
+    return -1
+end
+
+if(not redis.call('set', KEYS[3], ARGV[2], 'nx', 'px', ARGV[3])) then
+    return -2
+end
+redis.call('set', KEYS[2], ARGV[1], 'ex', ARGV[4])
+
+if(redis.call('exists', KEYS[4]) == 0) then
+    redis.call('del', KEYS[5], KEYS[6], KEYS[7])
+    return 1
+end
+return 2
@@ -0,0 +1,6 @@
+-- 名单加载失败时释放加载锁，只删除本次加载持有的锁
+-- KEYS[1]: 名单加载锁键  ARGV[1]: 本次加载的持有者标识
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return redis.call('del', KEYS[1])
+end
+return 0
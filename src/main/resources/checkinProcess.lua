@@ -1,38 +1,55 @@
+-- 名单已分批写入签到位图后调用，一次性写入签到开放标记、统计与过期时间
+-- KEYS[1]: 签到位图键  KEYS[2]: 签到开放标记（活动坐标与签到半径的哈希键）
+-- KEYS[3]: 签到统计哈希键  KEYS[4]: 最近签到列表键  KEYS[5]: 名单加载进度键  KEYS[6]: 名单加载锁键
+-- ARGV[1]: 活动id  ARGV[2]: 过期时间（秒）  ARGV[3]: 纬度  ARGV[4]: 经度  ARGV[5]: 签到半径（米）
+-- ARGV[6]: 应签到人数（最大序号加一）  ARGV[7]: 加载锁的持有者标识
+-- 加载锁已过期或被其他加载者持有时返回 -2，不写入任何数据
 local function checkinProcess(keys, args)
     -- 赋值
-    local userKey = keys[1]
+    local bitmapKey = keys[1]
     local locationKey = keys[2]
+    local statsKey = keys[3]
+    local recentKey = keys[4]
+    local progressKey = keys[5]
+    local lockKey = keys[6]
     local activityId = args[1]
     local duration = tonumber(args[2])
     local latitude = tonumber(args[3])
     local longitude = tonumber(args[4])
-    
+    local radius = tonumber(args[5])
+    local expected = tonumber(args[6])
+    local owner = args[7]
+
     -- 验证参数
-    if not activityId or not duration or not latitude or not longitude then
-        return 0
+    if not activityId or not duration or not latitude or not longitude or not radius or not expected then
+        return -1
     end
-    
-    -- 逐个读取电话列表的值
-    local phoneList = {}
-    for i = 5, #args do
-        table.insert(phoneList, args[i])
+
+    if redis.call("get", lockKey) ~= owner then
+        return -2
     end
-    
-    -- 清理可能已存在的旧数据
-    redis.call("del", userKey)
-    
-    -- 将电话加入到集合中
-    if #phoneList > 0 then
-        redis.call("sadd", userKey, unpack(phoneList))
-        redis.call("expire", userKey, duration)
+
+    -- 名单加载完成，清除进度并释放加载锁
+    redis.call("del", progressKey, recentKey, lockKey)
+    if expected == 0 then
+        return 0
     end
-    
-    -- 将地理位置加入
-    redis.call('geoadd', locationKey, longitude, latitude, activityId)
+
+    -- 按名单长度一次分配好位图，已写入的位保持不变
+    local last = expected - 1
+    redis.call("setbit", bitmapKey, last, redis.call("getbit", bitmapKey, last))
+    redis.call("expire", bitmapKey, duration)
+
+    -- 将活动坐标与签到半径（米）写入，作为签到开放标记
+    redis.call('hset', locationKey, 'longitude', longitude, 'latitude', latitude, 'radius', radius)
     redis.call("expire", locationKey, duration)
-    
+
+    -- 签到统计，供看板展示；开放前已签到的记录计入已签到人数
+    redis.call('hset', statsKey, 'expected', expected, 'checked', redis.call("bitcount", bitmapKey))
+    redis.call("expire", statsKey, duration)
+
     -- 返回应签到人数
-    return #phoneList
+    return expected
 end
 
 return checkinProcess(KEYS, ARGV)
@@ -0,0 +1,31 @@
+-- KEYS[1]: 已签到者集合键  KEYS[2]: 签到统计哈希键  KEYS[3]: 最近签到列表键
+-- KEYS[4]: 签到事件流（可选，仅Redis Stream流水线使用），ARGV[7..] 为事件字段
+-- ARGV[1]: 手机号  ARGV[2]: 已签到标记的保留秒数  ARGV[3]: 活动id  ARGV[4]: 签到时间戳（毫秒）
+-- ARGV[5]: 签到广播频道  ARGV[6]: 最近签到保留条数
+-- 动态签到码已在应用内校验，脚本只负责写入一次性的已签到标记
+local doneKey = KEYS[1]
+local phone = ARGV[1]
+
+if(redis.call('sadd', doneKey, phone) == 0) then
+    return 2
+end
+if(redis.call('ttl', doneKey) < 0) then
+    redis.call('expire', doneKey, ARGV[2])
+end
+
+-- 更新签到统计并广播给看板
+local checked = redis.call('hincrby', KEYS[2], 'checked', 1)
+local entry = phone .. '|' .. ARGV[4]
+redis.call('lpush', KEYS[3], entry)
+redis.call('ltrim', KEYS[3], 0, tonumber(ARGV[6]) - 1)
+if(redis.call('ttl', KEYS[3]) < 0) then
+    redis.call('expire', KEYS[3], ARGV[2])
+end
+redis.call('publish', ARGV[5], 'checkin|' .. ARGV[3] .. '|' .. checked .. '|' .. entry)
+
+-- 追加签到事件，由消费组异步写入数据库
+if(KEYS[4]) then
+    redis.call('xadd', KEYS[4], '*', unpack(ARGV, 7))
+end
+
+return 0
@@ -1,27 +1,33 @@
-local activityId = ARGV[1]
-local phone = ARGV[2]
-
-local activityKey = "registration:activity:" .. activityId
-local registrationKey = "registration:registrator:" .. activityId
+-- KEYS[1]: 剩余名额计数键  KEYS[2]: 报名者集合键
+-- 分片模式下两个键为同一分片的子计数器与子集合（同一哈希槽）
+-- KEYS[3]: 报名事件流（可选，仅Redis Stream流水线使用），ARGV[2..] 为事件字段
+local activityKey = KEYS[1]
+local registrationKey = KEYS[2]
+local phone = ARGV[1]
 
 local remain = redis.call('get', activityKey)
 -- 判断键是否存在
 if(remain == false) then
     return 1
 end
--- 判断是否还有名额
-if(tonumber(remain) <= 0) then
-    return 2
-end
 
 -- 判断用户是否已报名
 if(redis.call('sismember', registrationKey, phone) == 1) then
     return 3
 end
 
+-- 判断是否还有名额
+if(tonumber(remain) <= 0) then
+    return 2
+end
+
 -- 扣名额
 redis.call('incrby', activityKey, -1)
 -- 报名
 redis.call('sadd', registrationKey, phone)
+-- 追加报名事件，由消费组异步写入数据库
+if(KEYS[3]) then
+    redis.call('xadd', KEYS[3], '*', unpack(ARGV, 2))
+end
 
-return 0
\ No newline at end of file
+return 0
@@ -0,0 +1,15 @@
+-- KEYS[1]: 剩余名额计数键  KEYS[2]: 报名者集合键
+-- 从报名者集合中移除用户，移除成功且报名仍在进行时归还一个名额
+local activityKey = KEYS[1]
+local registrationKey = KEYS[2]
+local phone = ARGV[1]
+
+if(redis.call('srem', registrationKey, phone) == 0) then
+    return 0
+end
+
+if(redis.call('exists', activityKey) == 1) then
+    redis.call('incrby', activityKey, 1)
+end
+
+return 1
@@ -0,0 +1,21 @@
+-- KEYS[1]: 借入分片的计数键  KEYS[2]: 借入分片的转移记录哈希（与计数键同一哈希槽）
+-- ARGV[1]: 转移id  ARGV[2]: 转入的数量  ARGV[3]: 借入分片已过期时标记的保留秒数
+-- 转移的第二步：以 in:转移id 标记去重后把名额加到借入分片，重复执行不会重复转入。
+-- 标记不主动删除，随计数键一同过期，避免第一步的记录删除后迟到的重复执行再次转入。
+-- 借入分片已过期（报名已结束）时只写标记。返回 1 表示本次转入，0 表示此前已转入
+local counterKey = KEYS[1]
+local transferKey = KEYS[2]
+
+if(redis.call('hsetnx', transferKey, 'in:' .. ARGV[1], ARGV[2]) == 0) then
+    return 0
+end
+
+local ttl = redis.call('pttl', counterKey)
+if(ttl > 0) then
+    redis.call('incrby', counterKey, tonumber(ARGV[2]))
+    redis.call('pexpire', transferKey, ttl)
+else
+    redis.call('expire', transferKey, tonumber(ARGV[3]))
+end
+
+return 1
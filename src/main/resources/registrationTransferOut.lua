@@ -0,0 +1,29 @@
+-- KEYS[1]: 借出分片的计数键  KEYS[2]: 借出分片的转移记录哈希（与计数键同一哈希槽）
+-- ARGV[1]: 转移id  ARGV[2]: 借入分片  ARGV[3]: 当前时间戳（毫秒）
+-- 转移的第一步：从借出分片扣走一半剩余名额（至少一个），并记下 out:转移id -> 借入分片|数量|时间戳，
+-- 第二步在借入分片的哈希槽中执行，完成后删除该记录；第二步未完成的记录由对账任务补做。
+-- 返回扣走的数量，分片已耗尽或已过期时返回 0；同一转移id重复执行时返回记录的数量
+local counterKey = KEYS[1]
+local transferKey = KEYS[2]
+local field = 'out:' .. ARGV[1]
+
+local recorded = redis.call('hget', transferKey, field)
+if(recorded) then
+    return tonumber(string.match(recorded, '^%d+|(%d+)|'))
+end
+
+local remain = tonumber(redis.call('get', counterKey) or '0')
+if(remain <= 0) then
+    return 0
+end
+
+local take = math.max(1, math.floor(remain / 2))
+redis.call('incrby', counterKey, -take)
+redis.call('hset', transferKey, field, ARGV[2] .. '|' .. take .. '|' .. ARGV[3])
+-- 转移记录与计数键一同过期
+local ttl = redis.call('pttl', counterKey)
+if(ttl > 0) then
+    redis.call('pexpire', transferKey, ttl)
+end
+
+return take
@@ -15,11 +15,13 @@ create table activity(
 	id bigint unsigned primary key comment '活动id',
 	activity_name varchar(50) not null comment '活动名称',
     activity_description varchar(1000) comment '活动简介',
-    status tinyint default 1 not null comment '1. 未发布，2. 未开始报名，3. 报名中，4. 未开始，5. 进行中，6. 已结束',
+    status tinyint default 1 not null comment '创建时的状态，仅作记录；1. 未发布，2. 未开始报名，3. 报名中，4. 未开始，5. 进行中，6. 已结束，实际状态读取时由各时间推导',
     -- 位置信息
     latitude decimal(10, 8) not null comment '纬度',
     longitude decimal(11, 8) not null comment '经度',
     location varchar(200) not null comment '位置描述',
+    checkin_radius int unsigned comment '签到半径（米），为空时使用默认半径',
+    geofence json comment '签到范围（多个签到点或多边形），为空时以活动坐标和签到半径为签到范围',
     -- URL字段
     qr_code_oss_url varchar(300) comment '二维码OSS存储URL',
     link varchar(500) comment '相关链接',    
@@ -36,11 +38,16 @@ create table activity(
     -- 人数信息
     max_participants int unsigned not null default 0 comment '最大报名人数',
     current_participants int unsigned not null default 0 comment '目前报名人数',
+    remaining int as (cast(max_participants as signed) - cast(current_participants as signed)) stored comment '剩余名额',
+    checkin_count int unsigned not null default 0 comment '签到人数，活动结束结算时写入',
+    -- 结算信息
+    settle_time datetime comment '结算时间，为空表示尚未结算',
     -- 索引
     index idx_registeration_time (registration_start, registration_end) comment '报名时间索引',
     index idx_activity_time (activity_start, activity_end) comment '活动时间索引',
-    index idx_status (status) comment '状态索引',
     index idx_creator (creator_id) comment '创建者索引',
+    index idx_remaining (remaining) comment '剩余名额索引',
+    index idx_settle (settle_time, activity_end) comment '待结算活动索引',
     foreign key (creator_id) references administrator(id)
 ) comment '活动表';
 
@@ -54,8 +61,10 @@ create table registration(
     phone char(11) not null comment '手机号',
     registration_time datetime default now() comment '报名时间',
     checkin tinyint default 0 comment '0. 未签到，1. 已签到',
+    seq int unsigned comment '活动内的签到序号，签到开放时分配',
     -- 索引
     unique index idx_acticity_phone (activity_id, phone) comment '报名信息索引',
+    index idx_activity_seq (activity_id, seq) comment '签到序号索引',
     index idx_activity_id (activity_id) comment '活动索引',
     index idx_phone (phone) comment '预约者索引',
     foreign key (activity_id) references activity (id) on delete cascade
@@ -76,25 +85,8 @@ create table spring_session(
     index spring_session_ix3 (principal_name)
 );
 
-delimiter ;;
--- 增加报名人数
-create trigger increase_register
-after insert on registration
-for each row
-begin
-	update activity
-    set current_participants = current_participants + 1,
-		update_time = now()
-	where id = new.activity_id;
-end;;
--- 减少报名人数
-create trigger decrease_register
-after delete on registration
-for each row
-begin
-	update activity
-    set current_participants = current_participants - 1,
-		update_time = now()
-	where id = old.activity_id;
-end;;
-delimiter ;
\ No newline at end of file
+-- 目前报名人数（activity.current_participants）不再由触发器逐行维护，
+-- 而是由应用内的 ParticipantCountService 聚合各活动的增减量后定期批量写回，
+-- 避免高并发报名时所有插入争抢同一活动行的行锁
+drop trigger if exists increase_register;
+drop trigger if exists decrease_register;
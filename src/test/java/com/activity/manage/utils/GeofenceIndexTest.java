@@ -0,0 +1,101 @@
+package com.activity.manage.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeofenceIndexTest {
+
+    private static final double LATITUDE = 30.0;
+    private static final double LONGITUDE = 120.0;
+    /**
+     * 纬度 1 度约 111 公里，这里换算为每米的度数
+     */
+    private static final double DEGREE_PER_METER = 1 / 111226.0;
+
+    @Test
+    void testSingleAnchor() {
+        GeofenceIndex index = new GeofenceIndex(List.of(new double[]{LATITUDE, LONGITUDE, 100}), List.of());
+
+        assertTrue(index.contains(LATITUDE, LONGITUDE));
+        assertTrue(index.contains(LATITUDE + 90 * DEGREE_PER_METER, LONGITUDE));
+        assertTrue(index.contains(LATITUDE - 60 * DEGREE_PER_METER, LONGITUDE));
+        // 在外接矩形内但在圆外（角落）
+        assertFalse(index.contains(LATITUDE + 90 * DEGREE_PER_METER, LONGITUDE + 90 * DEGREE_PER_METER * 1.155));
+        // 外接矩形之外
+        assertFalse(index.contains(LATITUDE + 110 * DEGREE_PER_METER, LONGITUDE));
+        assertFalse(index.contains(LATITUDE + 1, LONGITUDE + 1));
+    }
+
+    @Test
+    void testMultipleAnchors() {
+        // 两个签到点相距约 1 公里，半径各 100 米
+        double north = LATITUDE + 1000 * DEGREE_PER_METER;
+        GeofenceIndex index = new GeofenceIndex(List.of(
+                new double[]{LATITUDE, LONGITUDE, 100},
+                new double[]{north, LONGITUDE, 100}), List.of());
+
+        assertTrue(index.contains(LATITUDE + 50 * DEGREE_PER_METER, LONGITUDE));
+        assertTrue(index.contains(north - 50 * DEGREE_PER_METER, LONGITUDE));
+        // 两个签到点之间的空地在外接矩形内，但不在任何一个圆内
+        assertFalse(index.contains(LATITUDE + 500 * DEGREE_PER_METER, LONGITUDE));
+        assertFalse(index.contains(LATITUDE + 150 * DEGREE_PER_METER, LONGITUDE));
+    }
+
+    @Test
+    void testConcavePolygon() {
+        // L 形场地：边长约 200 米的正方形去掉东北角的四分之一
+        double d = 200 * DEGREE_PER_METER;
+        double h = d / 2;
+        GeofenceIndex index = new GeofenceIndex(List.of(), List.of(
+                new double[]{LATITUDE, LONGITUDE},
+                new double[]{LATITUDE, LONGITUDE + d},
+                new double[]{LATITUDE + h, LONGITUDE + d},
+                new double[]{LATITUDE + h, LONGITUDE + h},
+                new double[]{LATITUDE + d, LONGITUDE + h},
+                new double[]{LATITUDE + d, LONGITUDE}));
+
+        assertTrue(index.contains(LATITUDE + h / 2, LONGITUDE + h / 2));
+        assertTrue(index.contains(LATITUDE + h / 2, LONGITUDE + d - h / 4));
+        assertTrue(index.contains(LATITUDE + d - h / 4, LONGITUDE + h / 2));
+        // 缺口处在外接矩形内但不在多边形内
+        assertFalse(index.contains(LATITUDE + d - h / 4, LONGITUDE + d - h / 4));
+        assertFalse(index.contains(LATITUDE + h + h / 10, LONGITUDE + h + h / 10));
+        assertFalse(index.contains(LATITUDE - h / 10, LONGITUDE + h));
+    }
+
+    @Test
+    void testAnchorAndPolygon() {
+        // 多边形在南边，签到点在北边，两者之一满足即可
+        double d = 100 * DEGREE_PER_METER;
+        double north = LATITUDE + 500 * DEGREE_PER_METER;
+        GeofenceIndex index = new GeofenceIndex(
+                List.of(new double[]{north, LONGITUDE, 50}),
+                List.of(new double[]{LATITUDE, LONGITUDE},
+                        new double[]{LATITUDE, LONGITUDE + d},
+                        new double[]{LATITUDE + d, LONGITUDE + d},
+                        new double[]{LATITUDE + d, LONGITUDE}));
+
+        assertTrue(index.contains(LATITUDE + d / 2, LONGITUDE + d / 2));
+        assertTrue(index.contains(north, LONGITUDE));
+        assertFalse(index.contains(LATITUDE + 300 * DEGREE_PER_METER, LONGITUDE));
+    }
+
+    @Test
+    void testDegeneratePolygonIgnored() {
+        // 少于三个顶点的多边形不构成范围，只参与原点计算
+        GeofenceIndex index = new GeofenceIndex(
+                List.of(new double[]{LATITUDE, LONGITUDE, 100}),
+                List.of(new double[]{LATITUDE + 0.01, LONGITUDE}, new double[]{LATITUDE + 0.01, LONGITUDE + 0.01}));
+
+        assertTrue(index.contains(LATITUDE, LONGITUDE));
+        assertFalse(index.contains(LATITUDE + 0.01, LONGITUDE));
+    }
+
+    @Test
+    void testEmptyRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new GeofenceIndex(List.of(), List.of()));
+    }
+}
@@ -0,0 +1,139 @@
+package com.activity.manage.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedOutboxTest {
+
+    private static final int SEGMENT_SIZE = 64;
+    /**
+     * 记录头：长度 int + CRC32 int
+     */
+    private static final int HEADER_SIZE = 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testAppendAndRead() throws IOException {
+        MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, false);
+
+        long first = outbox.append(bytes("a"));
+        long second = outbox.append(bytes("bc"));
+        assertEquals(0, first);
+        assertEquals(HEADER_SIZE + 1, second);
+        assertEquals(second + HEADER_SIZE + 2, outbox.getWriteOffset());
+
+        List<MappedOutbox.Entry> entries = outbox.read(0, 10);
+        assertEquals(List.of("a", "bc"), payloads(entries));
+        assertEquals(second, entries.get(0).nextOffset());
+        assertEquals(List.of("bc"), payloads(outbox.read(second, 10)));
+        assertEquals(List.of("a"), payloads(outbox.read(0, 1)));
+        assertThrows(IllegalArgumentException.class, () -> outbox.append(new byte[SEGMENT_SIZE]));
+    }
+
+    @Test
+    void testReopenAfterCheckpoint() throws IOException {
+        MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, false);
+        outbox.append(bytes("one"));
+        outbox.append(bytes("two"));
+        outbox.append(bytes("three"));
+        List<MappedOutbox.Entry> entries = outbox.read(0, 10);
+        outbox.commit(entries.get(0).nextOffset());
+        long writeOffset = outbox.getWriteOffset();
+        outbox.close();
+
+        // 重启后从 checkpoint 继续读取尚未确认的记录
+        MappedOutbox reopened = new MappedOutbox(dir, SEGMENT_SIZE, false);
+        assertEquals(entries.get(0).nextOffset(), reopened.getCommittedOffset());
+        assertEquals(writeOffset, reopened.getWriteOffset());
+        assertEquals(List.of("two", "three"), payloads(reopened.read(reopened.getCommittedOffset(), 10)));
+
+        // 确认位置不会回退
+        reopened.commit(0);
+        assertEquals(entries.get(0).nextOffset(), reopened.getCommittedOffset());
+    }
+
+    @Test
+    void testTornRecord() throws IOException {
+        MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, false);
+        outbox.append(bytes("one"));
+        outbox.append(bytes("two"));
+        long torn = outbox.getWriteOffset();
+        outbox.close();
+
+        // 模拟写到一半崩溃：长度已写入，内容与 CRC 不匹配
+        try (FileChannel channel = FileChannel.open(segment(0), StandardOpenOption.WRITE)) {
+            ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + 5);
+            record.putInt(5).putInt(0).put(bytes("thr"));
+            record.flip();
+            channel.write(record, torn);
+        }
+
+        MappedOutbox reopened = new MappedOutbox(dir, SEGMENT_SIZE, false);
+        assertEquals(torn, reopened.getWriteOffset());
+        assertEquals(List.of("one", "two"), payloads(reopened.read(0, 10)));
+
+        // 新记录覆盖写了一半的记录，再次重启仍能完整读出
+        assertEquals(torn, reopened.append(bytes("four")));
+        reopened.close();
+        MappedOutbox again = new MappedOutbox(dir, SEGMENT_SIZE, false);
+        assertEquals(List.of("one", "two", "four"), payloads(again.read(0, 10)));
+    }
+
+    @Test
+    void testSegmentRoll() throws IOException {
+        MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, false);
+        // 每条记录 28 字节，一个段放两条，第三条开启下一段
+        byte[] payload = new byte[20];
+        outbox.append(payload);
+        outbox.append(payload);
+        long third = outbox.append(payload);
+        assertEquals(SEGMENT_SIZE, third);
+        assertTrue(Files.exists(segment(SEGMENT_SIZE)));
+
+        List<MappedOutbox.Entry> entries = outbox.read(0, 10);
+        assertEquals(3, entries.size());
+        assertEquals(third, entries.get(2).offset());
+        // 从第一段的空尾读取时跳到下一段
+        assertEquals(third, outbox.read(entries.get(1).nextOffset(), 10).get(0).offset());
+
+        // 第一段还有未确认的记录时保留
+        outbox.commit(entries.get(1).nextOffset());
+        assertTrue(Files.exists(segment(0)));
+        // 第一段全部确认后删除
+        outbox.commit(entries.get(2).nextOffset());
+        assertFalse(Files.exists(segment(0)));
+        assertTrue(Files.exists(segment(SEGMENT_SIZE)));
+        outbox.close();
+
+        MappedOutbox reopened = new MappedOutbox(dir, SEGMENT_SIZE, false);
+        assertEquals(entries.get(2).nextOffset(), reopened.getCommittedOffset());
+        assertEquals(entries.get(2).nextOffset(), reopened.getWriteOffset());
+        assertTrue(reopened.read(reopened.getCommittedOffset(), 10).isEmpty());
+        assertEquals(entries.get(2).nextOffset(), reopened.append(bytes("next")));
+    }
+
+    private Path segment(long base) {
+        return dir.resolve(String.format("%020d.seg", base));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(List<MappedOutbox.Entry> entries) {
+        return entries.stream().map(e -> new String(e.payload(), StandardCharsets.UTF_8)).toList();
+    }
+}
@@ -0,0 +1,67 @@
+package com.activity.manage.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NgramIndexTest {
+
+    @Test
+    void testSearch() {
+        NgramIndex index = new NgramIndex();
+        index.put(1, "校园歌手大赛");
+        index.put(2, "歌手见面会");
+        index.put(3, "篮球赛");
+
+        assertArrayEquals(new long[]{1, 2}, index.search("歌手"));
+        assertArrayEquals(new long[]{1, 3}, index.search("赛"));
+        assertArrayEquals(new long[]{1}, index.search("歌手大赛"));
+        assertArrayEquals(new long[0], index.search("足球"));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void testNormalize() {
+        NgramIndex index = new NgramIndex();
+        index.put(1, "Java Meetup");
+
+        assertArrayEquals(new long[]{1}, index.search("javameetup"));
+        assertArrayEquals(new long[]{1}, index.search(" JAVA  meet "));
+        assertNull(index.search(null));
+        assertNull(index.search("  "));
+    }
+
+    @Test
+    void testBigramFalsePositive() {
+        // "abab" 的 bigram（ab、ba）在 "abba" 中都出现，但 "abba" 不包含 "abab"
+        NgramIndex index = new NgramIndex();
+        index.put(1, "abba");
+        index.put(2, "xababy");
+
+        assertArrayEquals(new long[]{2}, index.search("abab"));
+        assertArrayEquals(new long[]{1, 2}, index.search("ab"));
+        assertArrayEquals(new long[]{2}, index.search("bab"));
+    }
+
+    @Test
+    void testUpdateAndRemove() {
+        NgramIndex index = new NgramIndex();
+        index.put(1, "迎新晚会");
+        index.put(2, "毕业晚会");
+        index.trim();
+
+        // 更新后旧文本的 gram 不再命中
+        index.put(1, "迎新讲座");
+        assertArrayEquals(new long[]{2}, index.search("晚会"));
+        assertArrayEquals(new long[]{1}, index.search("讲座"));
+
+        index.remove(2);
+        assertArrayEquals(new long[0], index.search("晚会"));
+        assertEquals(1, index.size());
+
+        // 文本为空时只删除
+        index.put(1, null);
+        assertArrayEquals(new long[0], index.search("迎新"));
+        assertEquals(0, index.size());
+    }
+}
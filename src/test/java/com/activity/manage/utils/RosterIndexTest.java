@@ -0,0 +1,63 @@
+package com.activity.manage.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RosterIndexTest {
+
+    @Test
+    void testSeqAndPhone() {
+        // 输入不按手机号排序，序号 2 空缺
+        RosterIndex index = new RosterIndex(
+                new long[]{13900000003L, 13800000001L, 15000000004L},
+                new int[]{0, 1, 3}, 4);
+
+        assertEquals(0, index.seq("13900000003"));
+        assertEquals(1, index.seq("13800000001"));
+        assertEquals(3, index.seq("15000000004"));
+        assertEquals("13900000003", index.phone(0));
+        assertEquals("13800000001", index.phone(1));
+        assertEquals("15000000004", index.phone(3));
+        assertNull(index.phone(2));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void testUnknownPhone() {
+        RosterIndex index = new RosterIndex(new long[]{13800000001L}, new int[]{0}, 1);
+
+        assertEquals(-1, index.seq("13800000002"));
+        assertEquals(-1, index.seq(null));
+        assertEquals(-1, index.seq("1380000000"));
+        assertEquals(-1, index.seq("1380000000a"));
+        assertNull(index.phone(-1));
+        assertNull(index.phone(1));
+    }
+
+    @Test
+    void testLeadingZero() {
+        // 按 long 存放会丢掉前导零，取回时需要补齐 11 位
+        RosterIndex index = new RosterIndex(new long[]{RosterIndex.toLong("01234567890")}, new int[]{0}, 1);
+
+        assertEquals(0, index.seq("01234567890"));
+        assertEquals("01234567890", index.phone(0));
+    }
+
+    @Test
+    void testEmpty() {
+        RosterIndex index = new RosterIndex(new long[0], new int[0], 0);
+
+        assertEquals(-1, index.seq("13800000001"));
+        assertNull(index.phone(0));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testToLong() {
+        assertEquals(13800000001L, RosterIndex.toLong("13800000001"));
+        assertEquals(-1, RosterIndex.toLong("138000000011"));
+        assertEquals(-1, RosterIndex.toLong("138 0000001"));
+        assertEquals(-1, RosterIndex.toLong(null));
+    }
+}